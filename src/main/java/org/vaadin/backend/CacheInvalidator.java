@@ -0,0 +1,85 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import org.vaadin.backend.domain.Customer;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Initialized;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import javax.inject.Inject;
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnit;
+
+/**
+ * Keeps the JPA shared cache and the {@link QueryResultCache} consistent
+ * with the database. Committed changes are published to all nodes through
+ * the {@link CustomerChangeChannel} and every node evicts the stale data when
+ * it receives them.
+ */
+@ApplicationScoped
+public class CacheInvalidator {
+
+    @Inject
+    CustomerChangeChannel channel;
+
+    @Inject
+    QueryResultCache queryCache;
+
+    @PersistenceUnit(unitName = "customer-pu")
+    EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    void init() {
+        channel.subscribe(this::evict);
+    }
+
+    /**
+     * Subscribes to the channel when the application starts, instead of
+     * waiting for the first change made on this node.
+     */
+    void startup(@Observes @Initialized(ApplicationScoped.class) Object init) {
+    }
+
+    void customerChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS)
+            CustomerChange change) {
+        channel.publish(change);
+    }
+
+    private void evict(CustomerChange change) {
+        Cache cache = entityManagerFactory.getCache();
+        if (change.getKind() == CustomerChange.Kind.ALL) {
+            cache.evictAll();
+        } else {
+            cache.evict(Customer.class, change.getCustomerId());
+        }
+        queryCache.invalidateAll();
+    }
+}
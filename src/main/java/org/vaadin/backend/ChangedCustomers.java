@@ -0,0 +1,104 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Collects the customers changed since an in-memory structure was last
+ * brought up to date. Subscribed to the {@link CustomerChangeChannel}, so it
+ * sees the changes made on every node, and drained by the structure before
+ * it answers a query. Only ids are kept, the structure re-reads the current
+ * values of the changed customers from the database.
+ */
+class ChangedCustomers implements Consumer<CustomerChange> {
+
+    /**
+     * The number of ids to re-read with one IN query.
+     */
+    static final int CHUNK_SIZE = 1000;
+
+    private final Set<Integer> ids = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean all = new AtomicBoolean();
+
+    @Override
+    public void accept(CustomerChange change) {
+        if (change.getKind() == CustomerChange.Kind.ALL) {
+            all.set(true);
+        } else {
+            ids.add(change.getCustomerId());
+        }
+    }
+
+    /**
+     * Checks whether any number of customers may have changed, in which case
+     * the structure should be reloaded. Also forgets the changed ids, as the
+     * reload reads them anyway.
+     *
+     * @return true if the structure should be reloaded
+     */
+    boolean takeAll() {
+        if (all.getAndSet(false)) {
+            ids.clear();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if no customers have changed since the last
+     * {@link #take(int)}
+     */
+    boolean isEmpty() {
+        return ids.isEmpty();
+    }
+
+    /**
+     * Removes changed ids, to be re-read by the caller. Removing a customer
+     * and reading it again is idempotent, so a change arriving while the
+     * caller applies the ids is at worst applied twice, never lost.
+     *
+     * @param max the maximum number of ids to take
+     * @return the taken ids, empty if none have changed
+     */
+    List<Integer> take(int max) {
+        List<Integer> taken = new ArrayList<>();
+        for (Iterator<Integer> i = ids.iterator(); i.hasNext()
+                && taken.size() < max;) {
+            taken.add(i.next());
+            i.remove();
+        }
+        return taken;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import java.io.Serializable;
+
+/**
+ * A notification about modified customer data. Fired as a CDI event by
+ * CustomerService and distributed to all application nodes through the
+ * {@link CustomerChangeChannel}, so it only carries the id and the kind of
+ * the change.
+ */
+public class CustomerChange implements Serializable {
+
+    public enum Kind {
+        /** A customer was created */
+        CREATE,
+        /** A customer was updated */
+        SAVE,
+        /** A customer was removed */
+        DELETE,
+        /** Any number of customers may have changed, e.g. after a bulk load */
+        ALL
+    }
+
+    private final Kind kind;
+    private final int customerId;
+
+    private CustomerChange(Kind kind, int customerId) {
+        this.kind = kind;
+        this.customerId = customerId;
+    }
+
+    public static CustomerChange created(int customerId) {
+        return new CustomerChange(Kind.CREATE, customerId);
+    }
+
+    public static CustomerChange saved(int customerId) {
+        return new CustomerChange(Kind.SAVE, customerId);
+    }
+
+    public static CustomerChange deleted(int customerId) {
+        return new CustomerChange(Kind.DELETE, customerId);
+    }
+
+    public static CustomerChange all() {
+        return new CustomerChange(Kind.ALL, 0);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the id of the changed customer, 0 for {@link Kind#ALL}
+     */
+    public int getCustomerId() {
+        return customerId;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + customerId;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import java.util.function.Consumer;
+
+/**
+ * Distributes customer change notifications to every node running the
+ * application, so that each node can invalidate its caches. The default
+ * {@link LocalCustomerChangeChannel} only reaches the current JVM. When
+ * running several instances, provide e.g. a JMS topic or database
+ * notification based implementation as a CDI alternative in beans.xml.
+ */
+public interface CustomerChangeChannel {
+
+    /**
+     * Sends the change to all nodes, including the current one.
+     *
+     * @param change the change that has been committed to the database
+     */
+    void publish(CustomerChange change);
+
+    /**
+     * @param listener the listener to notify about changes published by any
+     * node
+     */
+    void subscribe(Consumer<CustomerChange> listener);
+}
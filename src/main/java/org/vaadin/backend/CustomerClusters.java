@@ -0,0 +1,301 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Groups customer locations into clusters for map display. For each zoom
+ * level, the world is divided into a grid of cells roughly
+ * {@link #CELL_PIXELS} wide on screen, and each cell with customers becomes
+ * one cluster. That bounds the number of markers in a map view to a few
+ * hundred, regardless of the number of customers.
+ * <p>
+ * The cells of the zoom levels up to {@link #STORED_ZOOM}, which have at
+ * most 8 * 4^zoom cells each, are kept up to date by the
+ * {@link CustomerSpatialIndex} as it adds and removes customers. Closer zoom
+ * levels show small areas, so their cells are aggregated from the customers
+ * in the area on each query. No state is kept per customer, the ids and
+ * coordinates are only held by the spatial index.
+ * </p>
+ *
+ * @see CustomerSpatialIndex#clusters(int, double, double, double, double)
+ */
+public class CustomerClusters {
+
+    /**
+     * The highest zoom level that is clustered, closer zoom levels should
+     * show individual customers.
+     */
+    public static final int MAX_ZOOM = 16;
+
+    /**
+     * The approximate size of a cell on screen.
+     */
+    public static final int CELL_PIXELS = 64;
+
+    /**
+     * The highest zoom level whose cells are kept in memory.
+     */
+    static final int STORED_ZOOM = 7;
+
+    private final Level[] levels = new Level[STORED_ZOOM + 1];
+
+    CustomerClusters() {
+        for (int zoom = 0; zoom <= STORED_ZOOM; zoom++) {
+            levels[zoom] = new Level(zoom);
+        }
+    }
+
+    void add(int id, double lat, double lon) {
+        for (Level level : levels) {
+            level.add(id, lat, lon);
+        }
+    }
+
+    void remove(int id, double lat, double lon) {
+        for (Level level : levels) {
+            level.remove(id, lat, lon);
+        }
+    }
+
+    void clear() {
+        for (int zoom = 0; zoom <= STORED_ZOOM; zoom++) {
+            levels[zoom] = new Level(zoom);
+        }
+    }
+
+    /**
+     * @param zoom a zoom level up to {@link #STORED_ZOOM}
+     * @return the stored cells of the zoom level
+     */
+    Level level(int zoom) {
+        return levels[zoom];
+    }
+
+    /**
+     * @return the cell size in degrees, 256 pixel tiles cover the world
+     * at zoom level 0
+     */
+    private static double cellSize(int zoom) {
+        return 360.0 * CELL_PIXELS / (256L << zoom);
+    }
+
+    /**
+     * Maps may show bounds past the poles or the date line when zoomed out
+     * or panned, there are no cells there.
+     */
+    private static double clamp(double degrees, double limit) {
+        return Math.max(-limit, Math.min(limit, degrees));
+    }
+
+    /**
+     * The cells of one zoom level that have customers, in packed arrays.
+     * Cells that become empty are reused.
+     */
+    static class Level {
+
+        private final double size;
+
+        private final LongIntMap cellsByKey = new LongIntMap();
+
+        private long[] keys = new long[16];
+        private int[] counts = new int[16];
+        private double[] latSums = new double[16];
+        private double[] lonSums = new double[16];
+        // the xor of the ids in the cell, equals the id of the only
+        // customer when the count is 1
+        private int[] idXors = new int[16];
+        private int cellCount;
+
+        private int[] freeCells = new int[16];
+        private int freeCount;
+
+        Level(int zoom) {
+            size = cellSize(zoom);
+        }
+
+        void add(int id, double lat, double lon) {
+            long key = cellKey(x(lon), y(lat));
+            int cell = cellsByKey.get(key);
+            if (cell < 0) {
+                cell = newCell(key);
+                cellsByKey.put(key, cell);
+            }
+            counts[cell]++;
+            latSums[cell] += lat;
+            lonSums[cell] += lon;
+            idXors[cell] ^= id;
+        }
+
+        void remove(int id, double lat, double lon) {
+            long key = cellKey(x(lon), y(lat));
+            int cell = cellsByKey.get(key);
+            if (cell < 0) {
+                return;
+            }
+            if (--counts[cell] == 0) {
+                cellsByKey.remove(key);
+                // no rounding errors left for the next customers
+                latSums[cell] = lonSums[cell] = 0;
+                idXors[cell] = 0;
+                if (freeCount == freeCells.length) {
+                    freeCells = Arrays.copyOf(freeCells, freeCount * 2);
+                }
+                freeCells[freeCount++] = cell;
+            } else {
+                latSums[cell] -= lat;
+                lonSums[cell] -= lon;
+                idXors[cell] ^= id;
+            }
+        }
+
+        /**
+         * @return the clusters of the cells overlapping the area
+         */
+        List<Cluster> clusters(double minLat, double minLon, double maxLat,
+                double maxLon) {
+            long minX = x(minLon);
+            long maxX = x(maxLon);
+            long minY = y(minLat);
+            long maxY = y(maxLat);
+            List<Cluster> clusters = new ArrayList<>();
+            if ((maxX - minX + 1) * (maxY - minY + 1) < cellsByKey.size()) {
+                // look up the cells in the area
+                for (long x = minX; x <= maxX; x++) {
+                    for (long y = minY; y <= maxY; y++) {
+                        int cell = cellsByKey.get(cellKey(x, y));
+                        if (cell >= 0) {
+                            clusters.add(toCluster(cell));
+                        }
+                    }
+                }
+            } else {
+                // fewer cells with customers than in the area
+                for (int cell = 0; cell < cellCount; cell++) {
+                    long x = keys[cell] >> 32;
+                    long y = (int) keys[cell];
+                    if (counts[cell] > 0 && x >= minX && x <= maxX
+                            && y >= minY && y <= maxY) {
+                        clusters.add(toCluster(cell));
+                    }
+                }
+            }
+            return clusters;
+        }
+
+        /**
+         * @return the area covered by the cells overlapping the given area,
+         * as {minLat, minLon, maxLat, maxLon}
+         */
+        double[] cellBounds(double minLat, double minLon, double maxLat,
+                double maxLon) {
+            return new double[]{y(minLat) * size - 90, x(minLon) * size - 180,
+                (y(maxLat) + 1) * size - 90, (x(maxLon) + 1) * size - 180};
+        }
+
+        private int newCell(long key) {
+            int cell;
+            if (freeCount > 0) {
+                cell = freeCells[--freeCount];
+            } else {
+                if (cellCount == keys.length) {
+                    int capacity = cellCount * 2;
+                    keys = Arrays.copyOf(keys, capacity);
+                    counts = Arrays.copyOf(counts, capacity);
+                    latSums = Arrays.copyOf(latSums, capacity);
+                    lonSums = Arrays.copyOf(lonSums, capacity);
+                    idXors = Arrays.copyOf(idXors, capacity);
+                }
+                cell = cellCount++;
+            }
+            keys[cell] = key;
+            return cell;
+        }
+
+        private Cluster toCluster(int cell) {
+            int count = counts[cell];
+            return new Cluster(latSums[cell] / count, lonSums[cell] / count,
+                    count, count == 1 ? idXors[cell] : 0);
+        }
+
+        private long x(double lon) {
+            return (long) Math.floor((clamp(lon, 180) + 180) / size);
+        }
+
+        private long y(double lat) {
+            return (long) Math.floor((clamp(lat, 90) + 90) / size);
+        }
+
+        private static long cellKey(long x, long y) {
+            return (x << 32) | (y & 0xffffffffL);
+        }
+    }
+
+    /**
+     * A group of customers shown as one marker, positioned at the average
+     * location of its customers.
+     */
+    public static class Cluster implements Serializable {
+
+        private final double latitude;
+        private final double longitude;
+        private final int count;
+        private final int customerId;
+
+        Cluster(double latitude, double longitude, int count,
+                int customerId) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.count = count;
+            this.customerId = customerId;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return the id of the customer if the cluster has only one, 0
+         * otherwise
+         */
+        public int getCustomerId() {
+            return customerId;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import org.vaadin.backend.domain.Customer;
+import org.vaadin.backend.domain.CustomerStatus;
+import org.vaadin.backend.domain.Gender;
+
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Generates realistic looking customers for load testing. The customers are
+ * created one at a time as the iterator is consumed, so millions of them can
+ * be streamed to {@link CustomerService#insertAll(Iterator, int)} without
+ * holding them in memory. The same seed produces the same customers,
+ * birth dates relative to the current day.
+ */
+public class CustomerGenerator implements Iterator<Customer> {
+
+    /**
+     * A city customers live around.
+     */
+    public static class City {
+
+        private final String name;
+        private final double latitude;
+        private final double longitude;
+        private final double weight;
+        private final double spread;
+
+        /**
+         * @param name the name of the city
+         * @param latitude the latitude of the center
+         * @param longitude the longitude of the center
+         * @param weight the relative share of customers living in the city
+         * @param spread the standard deviation of the distance from the
+         * center, in degrees of latitude
+         */
+        public City(String name, double latitude, double longitude,
+                double weight, double spread) {
+            this.name = name;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.weight = weight;
+            this.spread = spread;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private static final City[] DEFAULT_CITIES = {
+        new City("Boston", 42.3601, -71.0589, 5, 0.1),
+        new City("New York", 40.7128, -74.0060, 20, 0.15),
+        new City("Chicago", 41.8781, -87.6298, 9, 0.15),
+        new City("San Francisco", 37.7749, -122.4194, 7, 0.1),
+        new City("London", 51.5074, -0.1278, 15, 0.15),
+        new City("Berlin", 52.5200, 13.4050, 6, 0.1),
+        new City("Stockholm", 59.3293, 18.0686, 3, 0.08),
+        new City("Helsinki", 60.1699, 24.9384, 2, 0.06),
+        new City("Turku", 60.4518, 22.2666, 1, 0.04),
+        new City("Sydney", -33.8688, 151.2093, 8, 0.15),
+        new City("Tokyo", 35.6762, 139.6503, 24, 0.2)
+    };
+
+    private static final String[] FEMALE_NAMES = {"Emily", "Olivia", "Emma",
+        "Ava", "Sophia", "Isabella", "Mia", "Charlotte", "Amelia", "Harper",
+        "Evelyn", "Abigail", "Ella", "Elizabeth", "Camila", "Luna", "Sofia",
+        "Avery", "Gabrielle", "Corinne", "Ryann", "Kelly", "Eileen",
+        "Katelyn", "Quinn", "Makena", "Danielle", "Lara", "Ann", "Aino",
+        "Linnea", "Maja", "Hanna", "Elsa", "Saga", "Freja", "Ida", "Julia",
+        "Alice", "Nora"};
+
+    private static final String[] MALE_NAMES = {"Liam", "Noah", "Oliver",
+        "Elijah", "James", "William", "Benjamin", "Lucas", "Henry",
+        "Alexander", "Mason", "Michael", "Ethan", "Daniel", "Jacob", "Logan",
+        "Brian", "Eduardo", "Koen", "Alejandro", "Angel", "Yahir", "Haiden",
+        "Yurem", "Israel", "Leland", "Gunner", "Jamar", "Remington", "Rene",
+        "Elvis", "Solomon", "Jaydan", "Bernard", "Eino", "Matti", "Oskar",
+        "Erik", "Lars", "Johan"};
+
+    private static final String[] LAST_NAMES = {"Smith", "Johnson",
+        "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Martin",
+        "Wilson", "Anderson", "Taylor", "Thomas", "Moore", "Jackson", "White",
+        "Harris", "Walker", "Robinson", "Stewart", "Watson", "Patel",
+        "Macdonald", "Haugen", "Johansen", "Karlsson", "Gustavsson",
+        "Svensson", "Carlsson", "Hansson", "Karlsen", "Olsson", "Andersson",
+        "Olsen", "Nilsen", "Korhonen", "Virtanen", "Nieminen", "Lehtonen",
+        "Tanaka", "Suzuki", "Schmidt", "Schneider", "Fischer", "Weber"};
+
+    private static final String[] DOMAINS = {"gmail.com", "outlook.com",
+        "yahoo.com", "icloud.com", "example.com", "example.org", "mail.com"};
+
+    private long count = 1000;
+    private long seed;
+    private City[] cities = DEFAULT_CITIES;
+    private Choices femaleNames = new Choices(FEMALE_NAMES);
+    private Choices maleNames = new Choices(MALE_NAMES);
+    private Choices lastNames = new Choices(LAST_NAMES);
+    private Choices domains = new Choices(DOMAINS);
+    private double[] statusWeights = {0.3, 0.25, 0.2, 0.15, 0.1};
+    private double femaleShare = 0.5;
+    private double meanAge = 40;
+    private double ageDeviation = 15;
+
+    private Random random;
+    private double[] cityLimits;
+    private double[] statusLimits;
+    private LocalDate today;
+    private long generated;
+
+    /**
+     * @param count the number of customers to generate
+     * @return this generator
+     */
+    public CustomerGenerator withCount(long count) {
+        this.count = count;
+        return this;
+    }
+
+    /**
+     * @param seed the seed of the random numbers
+     * @return this generator
+     */
+    public CustomerGenerator withSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * @param cities the cities customers are spread around
+     * @return this generator
+     */
+    public CustomerGenerator withCities(City... cities) {
+        this.cities = cities;
+        return this;
+    }
+
+    /**
+     * Without weights, the first names are the most common, like with real
+     * names.
+     *
+     * @param gender the gender the names are for
+     * @param names the first names
+     * @param weights the relative share of each name, or none
+     * @return this generator
+     */
+    public CustomerGenerator withFirstNames(Gender gender, String[] names,
+            double... weights) {
+        if (gender == Gender.Female) {
+            femaleNames = new Choices(names, weights);
+        } else {
+            maleNames = new Choices(names, weights);
+        }
+        return this;
+    }
+
+    /**
+     * Without weights, the first names are the most common, like with real
+     * names.
+     *
+     * @param names the last names
+     * @param weights the relative share of each name, or none
+     * @return this generator
+     */
+    public CustomerGenerator withLastNames(String[] names, double... weights) {
+        lastNames = new Choices(names, weights);
+        return this;
+    }
+
+    /**
+     * Without weights, the first domains are the most common.
+     *
+     * @param domains the domains of the email addresses
+     * @param weights the relative share of each domain, or none
+     * @return this generator
+     */
+    public CustomerGenerator withDomains(String[] domains, double... weights) {
+        this.domains = new Choices(domains, weights);
+        return this;
+    }
+
+    /**
+     * @param statusWeights the relative share of each CustomerStatus, in
+     * ordinal order
+     * @return this generator
+     */
+    public CustomerGenerator withStatusWeights(double... statusWeights) {
+        if (statusWeights.length != CustomerStatus.values().length) {
+            throw new IllegalArgumentException(
+                    "A weight is needed for each status");
+        }
+        this.statusWeights = statusWeights;
+        return this;
+    }
+
+    /**
+     * @param femaleShare the share of women, between 0 and 1
+     * @return this generator
+     */
+    public CustomerGenerator withFemaleShare(double femaleShare) {
+        this.femaleShare = femaleShare;
+        return this;
+    }
+
+    /**
+     * Ages are normally distributed, limited to 0 - 99 years.
+     *
+     * @param meanAge the mean age in years
+     * @param ageDeviation the standard deviation of age in years
+     * @return this generator
+     */
+    public CustomerGenerator withAge(double meanAge, double ageDeviation) {
+        this.meanAge = meanAge;
+        this.ageDeviation = ageDeviation;
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return generated < count;
+    }
+
+    @Override
+    public Customer next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        if (random == null) {
+            random = new Random(seed);
+            cityLimits = cumulative(cities.length, i -> cities[i].weight);
+            statusLimits = cumulative(statusWeights.length,
+                    i -> statusWeights[i]);
+            today = LocalDate.now();
+        }
+        generated++;
+
+        Customer c = new Customer();
+        Gender gender = random.nextDouble() < femaleShare
+                ? Gender.Female : Gender.Male;
+        c.setGender(gender);
+        String firstName = pick(gender == Gender.Female
+                ? femaleNames : maleNames);
+        String lastName = pick(lastNames);
+        c.setFirstName(firstName);
+        c.setLastName(lastName);
+        c.setEmail(firstName.toLowerCase(Locale.ROOT) + "."
+                + lastName.toLowerCase(Locale.ROOT) + random.nextInt(1000)
+                + "@" + pick(domains));
+        c.setStatus(CustomerStatus.values()[pick(statusLimits)]);
+
+        double age = meanAge + random.nextGaussian() * ageDeviation;
+        age = Math.max(0, Math.min(99.9, age));
+        c.setBirthDate(today.minusDays((long) (age * 365.25)));
+
+        City city = cities[pick(cityLimits)];
+        double lat = city.latitude + random.nextGaussian() * city.spread;
+        double lon = city.longitude + random.nextGaussian() * city.spread
+                / Math.cos(Math.toRadians(city.latitude));
+        c.setLatitude(Math.max(-90, Math.min(90, lat)));
+        c.setLongitude(Math.max(-180, Math.min(180, lon)));
+        return c;
+    }
+
+    /**
+     * Picks a value by the weights, or without weights so that the first
+     * ones are the most common, like with real names.
+     */
+    private String pick(Choices choices) {
+        if (choices.limits == null) {
+            double x = random.nextDouble();
+            return choices.values[(int) (choices.values.length * x * x)];
+        }
+        return choices.values[pick(choices.limits)];
+    }
+
+    private int pick(double[] limits) {
+        double x = random.nextDouble() * limits[limits.length - 1];
+        for (int i = 0; i < limits.length - 1; i++) {
+            if (x < limits[i]) {
+                return i;
+            }
+        }
+        return limits.length - 1;
+    }
+
+    private static double[] cumulative(int length,
+            IntToDoubleFunction weight) {
+        double[] limits = new double[length];
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += weight.applyAsDouble(i);
+            limits[i] = sum;
+        }
+        return limits;
+    }
+
+    /**
+     * Values to pick from, with the cumulative weights if given.
+     */
+    private static class Choices {
+
+        final String[] values;
+        final double[] limits;
+
+        Choices(String[] values) {
+            this.values = values;
+            this.limits = null;
+        }
+
+        Choices(String[] values, double[] weights) {
+            if (values.length == 0) {
+                throw new IllegalArgumentException("No values to pick from");
+            }
+            if (weights.length != 0 && weights.length != values.length) {
+                throw new IllegalArgumentException(
+                        "A weight is needed for each value");
+            }
+            this.values = values;
+            this.limits = weights.length == 0 ? null
+                    : cumulative(weights.length, i -> weights[i]);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import org.vaadin.backend.domain.Customer;
+import org.vaadin.backend.domain.CustomerStatus;
+import org.vaadin.backend.domain.Gender;
+
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Imports customers from CSV, with a header row naming the columns like in
+ * the export: firstName, lastName, email, status, gender, birthDate,
+ * latitude and longitude. Other columns, like id, are ignored.
+ * <p>
+ * The file is read in chunks, each chunk is parsed and validated against
+ * the Bean Validation constraints of Customer in parallel, and the valid
+ * customers are inserted through
+ * {@link CustomerService#insertAll(Iterator, int)}, one transaction per
+ * batch. Invalid rows are skipped and reported, as are the rows of a
+ * batch that fails to insert.
+ * </p>
+ */
+@ApplicationScoped
+public class CustomerImporter {
+
+    /**
+     * The maximum number of errors kept for the report, the rest are only
+     * counted.
+     */
+    public static final int MAX_REPORTED_ERRORS = 1000;
+
+    private static final Logger LOGGER = Logger.getLogger(
+            CustomerImporter.class.getName());
+
+    private static final int CHUNK_SIZE = CustomerService.DEFAULT_BATCH_SIZE;
+
+    // the fewest rows worth validating in a part of their own
+    private static final int MIN_PART_ROWS = 100;
+
+    @Inject
+    CustomerService service;
+
+    @Inject
+    Validator validator;
+
+    @Resource
+    ManagedExecutorService executor;
+
+    /**
+     * @param reader the CSV input, should be buffered
+     * @param progress called with the number of rows read after each chunk
+     * @return the number of imported customers and the errors
+     * @throws IOException if reading fails
+     */
+    public ImportResult importCsv(Reader reader, IntConsumer progress)
+            throws IOException {
+        CsvReader csv = new CsvReader(reader);
+        String[] header = csv.readRecord();
+        if (header == null) {
+            return new ImportResult(0, 0, Collections.emptyList());
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.length; i++) {
+            columns.put(header[i].trim(), i);
+        }
+        if (!columns.containsKey("email")) {
+            return new ImportResult(0, 1, Collections.singletonList(
+                    new ImportError(1, "The header has no email column")));
+        }
+        ValidatingIterator customers = new ValidatingIterator(csv, columns,
+                progress);
+        int imported;
+        try {
+            imported = service.insertAll(customers, CHUNK_SIZE,
+                    customers::failed);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new ImportResult(imported, customers.errorCount,
+                customers.errors);
+    }
+
+    /**
+     * Reads the rows a chunk at a time and validates each chunk in parallel,
+     * providing the valid customers.
+     */
+    private class ValidatingIterator implements Iterator<Customer> {
+
+        private final CsvReader csv;
+        private final Map<String, Integer> columns;
+        private final IntConsumer progress;
+        private final Queue<Row> valid = new ArrayDeque<>();
+        private final List<ImportError> errors = new ArrayList<>();
+        // the lines of the last customers provided, a batch is at most
+        // a chunk
+        private final int[] lines = new int[CHUNK_SIZE];
+        private int provided;
+        private int errorCount;
+        private int rows;
+        private boolean end;
+
+        ValidatingIterator(CsvReader csv, Map<String, Integer> columns,
+                IntConsumer progress) {
+            this.csv = csv;
+            this.columns = columns;
+            this.progress = progress;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (valid.isEmpty() && !end) {
+                readChunk();
+            }
+            return !valid.isEmpty();
+        }
+
+        @Override
+        public Customer next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Row row = valid.poll();
+            lines[provided++ % CHUNK_SIZE] = row.line;
+            return row.customer;
+        }
+
+        /**
+         * Reports the rows of a batch that could not be inserted, the batch
+         * being the last customers provided.
+         */
+        void failed(List<Customer> batch, RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Inserting imported customers failed",
+                    e);
+            Throwable cause = e;
+            while (cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            String message = "Insert failed: " + cause.getMessage();
+            for (int i = batch.size(); i > 0; i--) {
+                error(lines[(provided - i) % CHUNK_SIZE], message);
+            }
+        }
+
+        private void error(int line, String message) {
+            errorCount++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new ImportError(line, message));
+            }
+        }
+
+        private void readChunk() {
+            List<Row> chunk = new ArrayList<>(CHUNK_SIZE);
+            try {
+                while (chunk.size() < CHUNK_SIZE) {
+                    String[] fields = csv.readRecord();
+                    if (fields == null) {
+                        end = true;
+                        break;
+                    }
+                    if (fields.length > 1 || !fields[0].isEmpty()) {
+                        chunk.add(new Row(csv.getRecordLine(), fields));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            // parsing and validation are independent for each row
+            List<List<Row>> parts = ParallelParts.compute(executor,
+                    chunk.size(), MIN_PART_ROWS, (from, to) -> chunk
+                    .subList(from, to).stream().map(this::parse)
+                    .collect(Collectors.toList()));
+            for (List<Row> part : parts) {
+                for (Row row : part) {
+                    if (row.error == null) {
+                        valid.add(row);
+                    } else {
+                        error(row.line, row.error);
+                    }
+                }
+            }
+            rows += chunk.size();
+            progress.accept(rows);
+        }
+
+        private Row parse(Row row) {
+            try {
+                Customer c = new Customer();
+                c.setFirstName(field(row, "firstName"));
+                c.setLastName(field(row, "lastName"));
+                c.setEmail(field(row, "email"));
+                String status = field(row, "status");
+                if (status != null) {
+                    c.setStatus(CustomerStatus.valueOf(status));
+                }
+                String gender = field(row, "gender");
+                if (gender != null) {
+                    c.setGender(Gender.valueOf(gender));
+                }
+                String birthDate = field(row, "birthDate");
+                if (birthDate != null) {
+                    c.setBirthDate(LocalDate.parse(birthDate));
+                }
+                String latitude = field(row, "latitude");
+                String longitude = field(row, "longitude");
+                if ((latitude == null) != (longitude == null)) {
+                    row.error = "A location needs both latitude and "
+                            + "longitude";
+                    return row;
+                }
+                if (latitude != null) {
+                    c.setLatitude(Double.valueOf(latitude));
+                    c.setLongitude(Double.valueOf(longitude));
+                }
+                Set<ConstraintViolation<Customer>> violations = validator.
+                        validate(c);
+                if (!violations.isEmpty()) {
+                    row.error = violations.stream()
+                            .map(v -> v.getPropertyPath() + ": "
+                                    + v.getMessage())
+                            .collect(Collectors.joining(", "));
+                } else {
+                    row.customer = c;
+                }
+            } catch (RuntimeException e) {
+                // invalid enum constants, dates and numbers
+                row.error = "Invalid value: " + e.getMessage();
+            }
+            return row;
+        }
+
+        /**
+         * @return the trimmed value of the column, null if missing or empty
+         */
+        private String field(Row row, String column) {
+            Integer index = columns.get(column);
+            if (index == null || index >= row.fields.length) {
+                return null;
+            }
+            String value = row.fields[index].trim();
+            return value.isEmpty() ? null : value;
+        }
+    }
+
+    private static class Row {
+
+        final int line;
+        final String[] fields;
+        Customer customer;
+        String error;
+
+        Row(int line, String[] fields) {
+            this.line = line;
+            this.fields = fields;
+        }
+    }
+
+    /**
+     * A row that could not be imported.
+     */
+    public static class ImportError implements Serializable {
+
+        private final int line;
+        private final String message;
+
+        public ImportError(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * The outcome of an import.
+     */
+    public static class ImportResult implements Serializable {
+
+        private final int imported;
+        private final int errorCount;
+        private final List<ImportError> errors;
+
+        public ImportResult(int imported, int errorCount,
+                List<ImportError> errors) {
+            this.imported = imported;
+            this.errorCount = errorCount;
+            this.errors = errors;
+        }
+
+        public int getImported() {
+            return imported;
+        }
+
+        /**
+         * @return the number of rows that could not be imported
+         */
+        public int getErrorCount() {
+            return errorCount;
+        }
+
+        /**
+         * @return the first {@link #MAX_REPORTED_ERRORS} errors
+         */
+        public List<ImportError> getErrors() {
+            return errors;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import com.vaadin.data.provider.QuerySortOrder;
+import org.vaadin.backend.domain.CustomerSummary;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The position of a customer in a sorted listing: the value of the sort
+ * column and the id that is used as a tie breaker. Used for keyset ("seek")
+ * pagination, where the next page is fetched with a WHERE clause past the
+ * last row of the previous page instead of skipping rows with OFFSET.
+ */
+public class CustomerKey implements Serializable {
+
+    private static final Set<String> KEY_PROPERTIES = new HashSet<>(
+            Arrays.asList("firstName", "lastName", "email", "status"));
+
+    private final Comparable<?> sortValue;
+    private final int id;
+
+    private CustomerKey(Comparable<?> sortValue, int id) {
+        this.sortValue = sortValue;
+        this.id = id;
+    }
+
+    /**
+     * Creates the key of the given customer for the given sort orders.
+     *
+     * @param customer the customer
+     * @param sortOrders the sort orders used for the listing
+     * @return the key, with a null sort value if the customer has no value
+     * in the sort column, or null if the sort orders can't be used for
+     * keyset pagination (more than one sort column, or a column that is not
+     * in the summary)
+     */
+    public static CustomerKey of(CustomerSummary customer,
+            List<QuerySortOrder> sortOrders) {
+        if (sortOrders.isEmpty()) {
+            return new CustomerKey(null, customer.getId());
+        }
+        String property = sortOrders.get(0).getSorted();
+        if (sortOrders.size() > 1 || !KEY_PROPERTIES.contains(property)) {
+            return null;
+        }
+        return new CustomerKey(sortValue(customer, property),
+                customer.getId());
+    }
+
+    private static Comparable<?> sortValue(CustomerSummary customer,
+            String property) {
+        switch (property) {
+            case "firstName":
+                return customer.getFirstName();
+            case "lastName":
+                return customer.getLastName();
+            case "email":
+                return customer.getEmail();
+            case "status":
+                return customer.getStatus();
+            default:
+                throw new IllegalArgumentException(property);
+        }
+    }
+
+    /**
+     * @return the value of the sort column, null if the customer has no
+     * value or the listing is in id order
+     */
+    public Comparable<?> getSortValue() {
+        return sortValue;
+    }
+
+    public int getId() {
+        return id;
+    }
+}
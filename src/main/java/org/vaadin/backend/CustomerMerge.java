@@ -0,0 +1,124 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import org.vaadin.backend.domain.Customer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Three-way merge of concurrent edits of a customer, field by field. A field
+ * changed on only one side takes that value, a field changed on both sides
+ * to different values is a conflict.
+ */
+class CustomerMerge {
+
+    private static final List<Field<?>> FIELDS = Arrays.asList(
+            new Field<>("firstName", Customer::getFirstName,
+                    Customer::setFirstName),
+            new Field<>("lastName", Customer::getLastName,
+                    Customer::setLastName),
+            new Field<>("email", Customer::getEmail, Customer::setEmail),
+            new Field<>("birthDate", Customer::getBirthDate,
+                    Customer::setBirthDate),
+            new Field<>("status", Customer::getStatus, Customer::setStatus),
+            new Field<>("gender", Customer::getGender, Customer::setGender),
+            // the coordinates are one value, merging them separately
+            // could combine the latitude of one place with the longitude of
+            // another
+            new Field<List<Double>>("location",
+                    c -> Arrays.asList(c.getLatitude(), c.getLongitude()),
+                    (c, location) -> {
+                        c.setLatitude(location.get(0));
+                        c.setLongitude(location.get(1));
+                    }));
+
+    private CustomerMerge() {
+    }
+
+    /**
+     * Applies the changes made by others to the edited customer, and moves
+     * it to the current version.
+     *
+     * @param base the values the edit started from
+     * @param edited the edited values, updated with the merged values
+     * @param current the values currently in the database
+     * @return the names of the fields changed on both sides, the edited
+     * customer is left as it is if not empty
+     */
+    static List<String> merge(Customer base, Customer edited,
+            Customer current) {
+        List<String> conflicts = new ArrayList<>();
+        for (Field<?> field : FIELDS) {
+            if (field.conflicts(base, edited, current)) {
+                conflicts.add(field.name);
+            }
+        }
+        if (conflicts.isEmpty()) {
+            for (Field<?> field : FIELDS) {
+                field.merge(base, edited, current);
+            }
+            edited.setVersion(current.getVersion());
+        }
+        return conflicts;
+    }
+
+    private static class Field<T> {
+
+        final String name;
+        final Function<Customer, T> getter;
+        final BiConsumer<Customer, T> setter;
+
+        Field(String name, Function<Customer, T> getter,
+                BiConsumer<Customer, T> setter) {
+            this.name = name;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        boolean conflicts(Customer base, Customer edited, Customer current) {
+            T original = getter.apply(base);
+            T mine = getter.apply(edited);
+            T theirs = getter.apply(current);
+            return !Objects.equals(mine, original)
+                    && !Objects.equals(theirs, original)
+                    && !Objects.equals(mine, theirs);
+        }
+
+        void merge(Customer base, Customer edited, Customer current) {
+            if (Objects.equals(getter.apply(edited), getter.apply(base))) {
+                // not changed in this edit, take the current value
+                setter.accept(edited, getter.apply(current));
+            }
+        }
+    }
+}
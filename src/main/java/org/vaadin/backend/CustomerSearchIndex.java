@@ -0,0 +1,571 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import com.vaadin.data.provider.QuerySortOrder;
+import com.vaadin.shared.data.sort.SortDirection;
+import org.vaadin.backend.domain.CustomerStatus;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * An in-memory trigram index over the first name, last name and email of all
+ * customers. Filter queries are answered from memory as a sorted list of
+ * customer ids, so that only the displayed page needs to be loaded from the
+ * database.
+ * <p>
+ * Filters of three or more characters match anywhere in the indexed fields,
+ * shorter ones match their beginning, using postings of the first one and
+ * two characters of each field. The index is loaded lazily on the first
+ * search. Customers changed on any node, as announced through the
+ * {@link CustomerChangeChannel}, are re-read before the next search, and bulk
+ * modifications, announced as {@link CustomerChange.Kind#ALL} changes,
+ * invalidate it. The database is read without holding the index lock, so
+ * searches only wait while the read rows are applied.
+ * </p>
+ */
+@ApplicationScoped
+public class CustomerSearchIndex {
+
+    private static final int LOAD_CHUNK_SIZE = 10000;
+
+    private static final int CACHED_RESULTS = 32;
+
+    @PersistenceContext(unitName = "customer-pu")
+    private EntityManager entityManager;
+
+    @Inject
+    CustomerChangeChannel channel;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // held while reading from the database, so that loads and updates are
+    // applied in the order they were read
+    private final Object updateLock = new Object();
+
+    // guarded by lock
+    private Map<Integer, Entry> entries = new HashMap<>();
+
+    // the ids of the customers by trigram and by prefix of one or two
+    // characters, see trigrams(String) and prefixes(String). Guarded by lock.
+    private Map<Long, Postings> postings = new HashMap<>();
+
+    private volatile boolean loaded;
+
+    private final ChangedCustomers changes = new ChangedCustomers();
+
+    // recent results by filter and sort order, cleared on every change. The
+    // matches of a filter in id order are cached with the filter as the key,
+    // and sorted results are created from them.
+    private final Map<String, int[]> results = Collections.synchronizedMap(
+            new LinkedHashMap<String, int[]>(CACHED_RESULTS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+            return size() > CACHED_RESULTS;
+        }
+    });
+
+    public CustomerSearchIndex() {
+    }
+
+    /**
+     * Creates a loaded index with the given customers, for testing without a
+     * database.
+     *
+     * @param rows the id, first name, last name, email, status and birth
+     * date of each customer
+     */
+    CustomerSearchIndex(List<Object[]> rows) {
+        rows.forEach(this::addEntry);
+        loaded = true;
+    }
+
+    @PostConstruct
+    void init() {
+        channel.subscribe(changes);
+    }
+
+    /**
+     * @param filter the filter string
+     * @param sortOrders the sort orders for the result
+     * @return the ids of the matching customers, in the given order
+     */
+    public int[] search(String filter, List<QuerySortOrder> sortOrders) {
+        ensureCurrent();
+        String query = toSearchForm(filter);
+        String cacheKey = cacheKey(query, sortOrders);
+        int[] result = results.get(cacheKey);
+        if (result != null) {
+            return result;
+        }
+        lock.readLock().lock();
+        try {
+            result = sort(matches(query), comparator(sortOrders));
+            // cached while holding the lock, so the result can't be stale
+            results.put(cacheKey, result);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param filter the filter string
+     * @return the number of matching customers
+     */
+    public int count(String filter) {
+        ensureCurrent();
+        String query = toSearchForm(filter);
+        lock.readLock().lock();
+        try {
+            return matches(query).length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Drops the indexed data, it is reloaded from the database on the next
+     * search.
+     */
+    public void invalidate() {
+        synchronized (updateLock) {
+            lock.writeLock().lock();
+            try {
+                loaded = false;
+                entries = new HashMap<>();
+                postings = new HashMap<>();
+                results.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Loads the index or reloads it after bulk changes, then re-reads the
+     * customers changed since the last search.
+     */
+    private void ensureCurrent() {
+        if (changes.takeAll()) {
+            invalidate();
+        }
+        ensureLoaded();
+        if (changes.isEmpty()) {
+            return;
+        }
+        synchronized (updateLock) {
+            List<Integer> changed;
+            while (!(changed = changes.take(ChangedCustomers.CHUNK_SIZE))
+                    .isEmpty()) {
+                // deleted customers are not found
+                List<Object[]> rows = entityManager.createQuery(
+                        "SELECT c.id, c.firstName, c.lastName, c.email, "
+                        + "c.status, c.birthDate FROM Customer c "
+                        + "WHERE c.id IN :ids", Object[].class)
+                        .setParameter("ids", changed)
+                        .getResultList();
+                lock.writeLock().lock();
+                try {
+                    changed.forEach(this::removeEntry);
+                    rows.forEach(this::addEntry);
+                    results.clear();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (updateLock) {
+            if (!loaded) {
+                List<Object[]> rows = load();
+                lock.writeLock().lock();
+                try {
+                    entries = new HashMap<>(rows.size() * 4 / 3 + 1);
+                    postings = new HashMap<>();
+                    rows.forEach(this::addEntry);
+                    results.clear();
+                    loaded = true;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the indexed columns in chunks ordered by id, so that no entities
+     * are created and the postings are later appended in order.
+     */
+    private List<Object[]> load() {
+        List<Object[]> all = new ArrayList<>();
+        int lastId = Integer.MIN_VALUE;
+        List<Object[]> rows;
+        do {
+            rows = entityManager.createQuery("SELECT c.id, c.firstName, "
+                    + "c.lastName, c.email, c.status, c.birthDate "
+                    + "FROM Customer c WHERE c.id > :lastId ORDER BY c.id",
+                    Object[].class)
+                    .setParameter("lastId", lastId)
+                    .setMaxResults(LOAD_CHUNK_SIZE)
+                    .getResultList();
+            if (!rows.isEmpty()) {
+                lastId = (Integer) rows.get(rows.size() - 1)[0];
+                all.addAll(rows);
+            }
+        } while (rows.size() == LOAD_CHUNK_SIZE);
+        return all;
+    }
+
+    /**
+     * @param row the id, first name, last name, email, status and birth
+     * date of a customer
+     */
+    private void addEntry(Object[] row) {
+        addEntry(new Entry((Integer) row[0], (String) row[1], (String) row[2],
+                (String) row[3], (CustomerStatus) row[4], (LocalDate) row[5]));
+    }
+
+    private void addEntry(Entry entry) {
+        entries.put(entry.id, entry);
+        for (long key : entry.keys()) {
+            postings.computeIfAbsent(key, t -> new Postings()).add(entry.id);
+        }
+    }
+
+    private void removeEntry(int id) {
+        Entry entry = entries.remove(id);
+        if (entry != null) {
+            for (long key : entry.keys()) {
+                Postings p = postings.get(key);
+                if (p != null && p.remove(id) && p.size == 0) {
+                    postings.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the customers matching a filter, or reuses the cached matches.
+     * Called holding the read lock.
+     *
+     * @param query the filter in search form
+     * @return the ids of the matching customers in id order
+     */
+    private int[] matches(String query) {
+        int[] matches = results.get(query);
+        if (matches == null) {
+            matches = query.length() < 3 ? findByPrefix(query)
+                    : findByTrigrams(query);
+            results.put(query, matches);
+        }
+        return matches;
+    }
+
+    private int[] findByPrefix(String query) {
+        Postings p = postings.get(prefixKey(query, query.length()));
+        return p == null ? new int[0] : Arrays.copyOf(p.ids, p.size);
+    }
+
+    private int[] findByTrigrams(String query) {
+        List<Postings> lists = new ArrayList<>();
+        for (long trigram : trigrams(query)) {
+            Postings p = postings.get(trigram);
+            if (p == null) {
+                return new int[0];
+            }
+            lists.add(p);
+        }
+        lists.sort(Comparator.comparingInt(p -> p.size));
+        Postings smallest = lists.get(0);
+        int[] matches = new int[smallest.size];
+        int count = 0;
+        candidates:
+        for (int i = 0; i < smallest.size; i++) {
+            int id = smallest.ids[i];
+            for (int j = 1; j < lists.size(); j++) {
+                if (!lists.get(j).contains(id)) {
+                    continue candidates;
+                }
+            }
+            // the trigrams may come from different fields or positions
+            if (entries.get(id).contains(query)) {
+                matches[count++] = id;
+            }
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * @param ids customer ids in id order
+     * @param comparator the order of the result, null for id order
+     * @return the ids in the given order
+     */
+    private int[] sort(int[] ids, Comparator<Entry> comparator) {
+        if (comparator == null) {
+            return ids;
+        }
+        Entry[] sorted = new Entry[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            sorted[i] = entries.get(ids[i]);
+        }
+        Arrays.sort(sorted, comparator);
+        int[] result = new int[sorted.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = sorted[i].id;
+        }
+        return result;
+    }
+
+    private static String cacheKey(String query,
+            List<QuerySortOrder> sortOrders) {
+        StringBuilder sb = new StringBuilder(query);
+        for (QuerySortOrder sortOrder : sortOrders) {
+            sb.append('\0').append(sortOrder.getSorted()).append(' ').append(
+                    sortOrder.getDirection());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Orders like the database does in CustomerService: customers without a
+     * value last in both directions, and id as the last sort criteria in the
+     * direction of the first column.
+     *
+     * @return the comparator, or null if none of the sort orders apply and
+     * the result is in id order
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Comparator<Entry> comparator(
+            List<QuerySortOrder> sortOrders) {
+        Comparator<Entry> comparator = null;
+        Comparator<Entry> byId = Comparator.comparingInt(e -> e.id);
+        for (QuerySortOrder sortOrder : sortOrders) {
+            Function<Entry, Comparable> property = sortProperty(sortOrder.
+                    getSorted());
+            if (property == null) {
+                continue;
+            }
+            boolean descending = sortOrder.getDirection()
+                    == SortDirection.DESCENDING;
+            Comparator<Entry> c = (a, b) -> {
+                Comparable x = property.apply(a);
+                Comparable y = property.apply(b);
+                if (x == null || y == null) {
+                    return x == y ? 0 : x == null ? 1 : -1;
+                }
+                return descending ? y.compareTo(x) : x.compareTo(y);
+            };
+            if (comparator == null) {
+                comparator = c;
+                if (descending) {
+                    byId = byId.reversed();
+                }
+            } else {
+                comparator = comparator.thenComparing(c);
+            }
+        }
+        return comparator == null ? null : comparator.thenComparing(byId);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static Function<Entry, Comparable> sortProperty(String property) {
+        switch (property) {
+            case "firstName":
+                return e -> e.firstName;
+            case "lastName":
+                return e -> e.lastName;
+            case "email":
+                return e -> e.email;
+            case "status":
+                return e -> e.status;
+            case "birthDate":
+                return e -> e.birthDate;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param name a name or email
+     * @return the lower case form the filters are matched against
+     */
+    private static String toSearchForm(String name) {
+        return name == null ? null : name.toLowerCase(Locale.ROOT);
+    }
+
+    private static long[] trigrams(String term) {
+        if (term == null || term.length() < 3) {
+            return new long[0];
+        }
+        long[] trigrams = new long[term.length() - 2];
+        for (int i = 0; i < trigrams.length; i++) {
+            trigrams[i] = ((long) term.charAt(i) << 32)
+                    | ((long) term.charAt(i + 1) << 16) | term.charAt(i + 2);
+        }
+        return trigrams;
+    }
+
+    /**
+     * @return the keys of the first one and two characters of the term
+     */
+    private static long[] prefixes(String term) {
+        if (term == null || term.isEmpty()) {
+            return new long[0];
+        }
+        return term.length() == 1 ? new long[]{prefixKey(term, 1)}
+                : new long[]{prefixKey(term, 1), prefixKey(term, 2)};
+    }
+
+    /**
+     * The length above the 48 bits of the trigrams keeps the prefix keys
+     * apart from them.
+     */
+    private static long prefixKey(String term, int length) {
+        long key = (long) length << 48 | (long) term.charAt(0) << 16;
+        return length == 1 ? key : key | term.charAt(1);
+    }
+
+    private static class Entry {
+
+        final int id;
+        final String firstName;
+        final String lastName;
+        final String email;
+        final CustomerStatus status;
+        final LocalDate birthDate;
+        // lower case forms of the indexed fields
+        final String[] terms;
+
+        Entry(int id, String firstName, String lastName, String email,
+                CustomerStatus status, LocalDate birthDate) {
+            this.id = id;
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.email = email;
+            this.status = status;
+            this.birthDate = birthDate;
+            this.terms = new String[]{toSearchForm(firstName),
+                toSearchForm(lastName), toSearchForm(email)};
+        }
+
+        /**
+         * @return the trigrams and prefixes of all terms, may contain
+         * duplicates
+         */
+        long[] keys() {
+            long[] all = new long[0];
+            for (String term : terms) {
+                all = concat(all, CustomerSearchIndex.trigrams(term));
+                all = concat(all, prefixes(term));
+            }
+            return all;
+        }
+
+        private static long[] concat(long[] a, long[] b) {
+            long[] all = Arrays.copyOf(a, a.length + b.length);
+            System.arraycopy(b, 0, all, a.length, b.length);
+            return all;
+        }
+
+        boolean contains(String query) {
+            for (String term : terms) {
+                if (term != null && term.contains(query)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A sorted, growable array of customer ids.
+     */
+    private static class Postings {
+
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            // appended in id order when loading
+            if (size > 0 && id > ids[size - 1]) {
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                }
+                ids[size++] = id;
+                return;
+            }
+            int i = Arrays.binarySearch(ids, 0, size, id);
+            if (i >= 0) {
+                return;
+            }
+            i = -i - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, i, ids, i + 1, size - i);
+            ids[i] = id;
+            size++;
+        }
+
+        boolean remove(int id) {
+            int i = Arrays.binarySearch(ids, 0, size, id);
+            if (i < 0) {
+                return false;
+            }
+            System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+            size--;
+            return true;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+}
@@ -26,32 +26,257 @@
  */
 package org.vaadin.backend;
 
+import com.vaadin.data.provider.QuerySortOrder;
+import com.vaadin.shared.data.sort.SortDirection;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import java.time.LocalDate;
+import org.vaadin.backend.domain.AgeGroup;
 import org.vaadin.backend.domain.Customer;
+import org.vaadin.backend.domain.CustomerStatistics;
 import org.vaadin.backend.domain.CustomerStatus;
+import org.vaadin.backend.domain.CustomerSummary;
 import org.vaadin.backend.domain.Gender;
 
+import javax.annotation.Resource;
+import javax.ejb.EJBException;
+import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.enterprise.event.Event;
+import javax.inject.Inject;
+import javax.persistence.CacheRetrieveMode;
+import javax.persistence.CacheStoreMode;
 import javax.persistence.EntityManager;
+import javax.persistence.OptimisticLockException;
 import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 @Stateless
 public class CustomerService {
 
+    /**
+     * The properties the customer listing can be sorted by, all of them
+     * indexed in the Customer table.
+     */
+    public static final Set<String> SORTABLE_PROPERTIES = Collections.
+            unmodifiableSet(new HashSet<>(Arrays.asList("firstName",
+                    "lastName", "email", "status", "birthDate")));
+
+    /**
+     * The default number of customers inserted per transaction by
+     * {@link #insertAll(Iterator, int)}, matches the id allocation size and
+     * the JDBC batch size.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static final int EXPORT_CHUNK_SIZE = 1000;
+
+    private static final int MAX_SAVE_ATTEMPTS = 3;
+
     @PersistenceContext(unitName = "customer-pu")
     private EntityManager entityManager;
 
+    @Inject
+    CustomerSearchIndex searchIndex;
+
+    @Inject
+    QueryResultCache queryCache;
+
+    @Inject
+    Event<CustomerChange> changeEvent;
+
+    @Inject
+    SaveMetrics saveMetrics;
+
+    @Resource
+    SessionContext context;
+
     public void saveOrPersist(Customer entity) {
         if (entity.getId() > 0) {
             entityManager.merge(entity);
+            changeEvent.fire(CustomerChange.saved(entity.getId()));
         } else {
             entityManager.persist(entity);
+            changeEvent.fire(CustomerChange.created(entity.getId()));
+        }
+    }
+
+    /**
+     * Saves an edited customer. If someone else has saved the customer since
+     * the edit started, their changes are merged field by field and the
+     * save is retried, so only edits of the same fields are conflicts.
+     *
+     * @param base the values the edit started from, see Customer.copy()
+     * @param edited the edited customer, receives the merged values
+     * @return the saved customer
+     * @throws CustomerConflictException if the same fields were changed by
+     * someone else, or the customer was removed
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public Customer save(Customer base, Customer edited) throws
+            CustomerConflictException {
+        // through the container, so that each attempt gets a new transaction
+        CustomerService self = context.getBusinessObject(CustomerService.class);
+        if (!edited.isPersisted() || base == null) {
+            self.saveOrPersist(edited);
+            saveMetrics.saved();
+            return edited;
+        }
+        for (int attempt = 1;; attempt++) {
+            try {
+                Customer saved = self.update(edited);
+                saveMetrics.saved();
+                return saved;
+            } catch (EJBException e) {
+                if (!isOptimisticLockFailure(e)) {
+                    throw e;
+                }
+                saveMetrics.conflict();
+                Customer current = entityManager.find(Customer.class,
+                        edited.getId(), Collections.singletonMap(
+                                "javax.persistence.cache.retrieveMode",
+                                CacheRetrieveMode.BYPASS));
+                List<String> conflicts = current == null
+                        ? Collections.emptyList()
+                        : CustomerMerge.merge(base, edited, current);
+                if (current == null || !conflicts.isEmpty()
+                        || attempt == MAX_SAVE_ATTEMPTS) {
+                    saveMetrics.unresolved();
+                    throw new CustomerConflictException(conflicts, current);
+                }
+                saveMetrics.merged();
+                // the merged values are now based on the current ones
+                base = current;
+            }
+        }
+    }
+
+    /**
+     * Updates an existing customer, failing if the version is not the
+     * current one.
+     *
+     * @param customer the customer with the new values
+     * @return the saved customer, with the new version
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Customer update(Customer customer) {
+        Customer saved = entityManager.merge(customer);
+        // detect a version conflict here rather than on commit
+        entityManager.flush();
+        changeEvent.fire(CustomerChange.saved(saved.getId()));
+        return saved;
+    }
+
+    private static boolean isOptimisticLockFailure(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof OptimisticLockException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Inserts new customers in batches, each in its own transaction. Only one
+     * batch of entities is held in memory at a time, so the customers can be
+     * streamed from a generator or a file.
+     *
+     * @param customers the new customers
+     * @param batchSize the number of customers inserted per transaction
+     * @return the number of customers inserted
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public int insertAll(Iterator<Customer> customers, int batchSize) {
+        return insertAll(customers, batchSize, (batch, e) -> {
+            throw e;
+        });
+    }
+
+    /**
+     * Inserts new customers like {@link #insertAll(Iterator, int)}, but
+     * goes on with the next batches when a batch fails. The failed batch is
+     * rolled back and passed to the given handler.
+     *
+     * @param customers the new customers
+     * @param batchSize the number of customers inserted per transaction
+     * @param failures called with each batch that could not be inserted and
+     * the reason, may throw to stop the insert
+     * @return the number of customers inserted
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public int insertAll(Iterator<Customer> customers, int batchSize,
+            BiConsumer<List<Customer>, RuntimeException> failures) {
+        // through the container, so that each batch gets a new transaction
+        CustomerService self = context.getBusinessObject(CustomerService.class);
+        List<Customer> batch = new ArrayList<>(batchSize);
+        int count = 0;
+        try {
+            while (customers.hasNext()) {
+                batch.add(customers.next());
+                if (batch.size() == batchSize) {
+                    count += insertBatch(self, batch, failures);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                count += insertBatch(self, batch, failures);
+            }
+        } finally {
+            if (count > 0) {
+                // the bulk load bypasses the per customer events
+                changeEvent.fire(CustomerChange.all());
+            }
+        }
+        return count;
+    }
+
+    private static int insertBatch(CustomerService self, List<Customer> batch,
+            BiConsumer<List<Customer>, RuntimeException> failures) {
+        try {
+            return self.insertBatch(batch);
+        } catch (RuntimeException e) {
+            failures.accept(batch, e);
+            return 0;
+        }
+    }
+
+    /**
+     * Persists one batch of new customers, the inserts are sent to the
+     * database as a JDBC batch on flush.
+     *
+     * @param batch the new customers
+     * @return the number of customers inserted
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int insertBatch(List<Customer> batch) {
+        for (Customer customer : batch) {
+            entityManager.persist(customer);
         }
+        entityManager.flush();
+        // don't keep the inserted customers managed
+        entityManager.clear();
+        return batch.size();
     }
 
     public void deleteEntity(Customer entity) {
@@ -59,9 +284,21 @@ public class CustomerService {
             // reattach to remove
             entity = entityManager.merge(entity);
             entityManager.remove(entity);
+            changeEvent.fire(CustomerChange.deleted(entity.getId()));
         }
     }
 
+    /**
+     * Loads the full entity, e.g. for editing. Listings should use the
+     * lighter projections.
+     *
+     * @param id the id of the customer
+     * @return the customer, or null if it doesn't exist
+     */
+    public Customer find(int id) {
+        return entityManager.find(Customer.class, id);
+    }
+
     public List<Customer> findAll() {
         CriteriaQuery<Customer> cq = entityManager.getCriteriaBuilder().
                 createQuery(Customer.class);
@@ -69,26 +306,492 @@ public class CustomerService {
         return entityManager.createQuery(cq).getResultList();
     }
 
-    public List<Customer> findByName(String filter) {
+    /**
+     * Passes all customers to the consumer in id order, reading them in
+     * chunks of {@link #EXPORT_CHUNK_SIZE}, so memory use doesn't grow with
+     * the number of customers. The customers are detached, and they bypass
+     * the shared cache so an export doesn't evict the cached customers.
+     * <p>
+     * JPA 2.1 has no result streams, so this seeks by id instead of keeping
+     * a cursor open.
+     * </p>
+     *
+     * @param consumer the consumer of the customers
+     * @return the number of customers
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public int forEach(Consumer<Customer> consumer) {
+        int count = 0;
+        int lastId = Integer.MIN_VALUE;
+        List<Customer> chunk;
+        do {
+            chunk = entityManager.createQuery("SELECT c FROM Customer c "
+                    + "WHERE c.id > :lastId ORDER BY c.id", Customer.class)
+                    .setParameter("lastId", lastId)
+                    .setMaxResults(EXPORT_CHUNK_SIZE)
+                    .setHint("javax.persistence.cache.retrieveMode",
+                            CacheRetrieveMode.BYPASS)
+                    .setHint("javax.persistence.cache.storeMode",
+                            CacheStoreMode.BYPASS)
+                    .setHint("eclipselink.jdbc.fetch-size", EXPORT_CHUNK_SIZE)
+                    .getResultList();
+            // without a transaction, the customers are detached right away
+            // and only the current chunk is referenced
+            for (Customer customer : chunk) {
+                consumer.accept(customer);
+                lastId = customer.getId();
+                count++;
+            }
+        } while (chunk.size() == EXPORT_CHUNK_SIZE);
+        return count;
+    }
+
+    /**
+     * @return the area containing all customer locations as {minLat, minLon,
+     * maxLat, maxLon}, or null if no customer has a location
+     */
+    public double[] findLocationBounds() {
+        Object[] row = entityManager.createNamedQuery(
+                "Customer.findLocationBounds", Object[].class)
+                .getSingleResult();
+        if (row[0] == null) {
+            return null;
+        }
+        return new double[]{(Double) row[0], (Double) row[1],
+            (Double) row[2], (Double) row[3]};
+    }
+
+    /**
+     * Counts customers by status, gender and age group with aggregate
+     * queries, so only a handful of rows are read from the database. The
+     * counts are not cached, as they are used to reconcile the in-memory
+     * counters of {@link CustomerStatisticsStore} with the database.
+     *
+     * @return the customer statistics as counted by the database
+     */
+    public CustomerStatistics getStatistics() {
+        int[] statusCounts = new int[CustomerStatus.values().length];
+        countBy("Customer.countByStatus", statusCounts, false);
+        // the last element counts the customers without a gender
+        int[] genderCounts = new int[Gender.values().length + 1];
+        countBy("Customer.countByGender", genderCounts, true);
+        int[][] ageGroupCounts = new int[AgeGroup.values().length][];
+        int year = LocalDate.now().getYear();
+        LocalDate bornBefore = null;
+        for (AgeGroup group : AgeGroup.values()) {
+            LocalDate bornFrom = group.getBornFrom(year);
+            ageGroupCounts[group.ordinal()] = countByGender(bornFrom,
+                    bornBefore);
+            bornBefore = bornFrom;
+        }
+        return new CustomerStatistics(statusCounts, genderCounts,
+                ageGroupCounts);
+    }
+
+    /**
+     * Runs a query returning enum constants and their counts.
+     *
+     * @param countUnknown true to count the customers without a value in the
+     * last element, which follows the enum constants, false to not count them
+     */
+    private void countBy(String queryName, int[] counts,
+            boolean countUnknown) {
+        for (Object[] row : entityManager.createNamedQuery(queryName,
+                Object[].class).getResultList()) {
+            if (row[0] != null) {
+                counts[((Enum<?>) row[0]).ordinal()] = ((Long) row[1]).
+                        intValue();
+            } else if (countUnknown) {
+                counts[counts.length - 1] += ((Long) row[1]).intValue();
+            }
+        }
+    }
+
+    /**
+     * @param bornFrom the first birth date to count, null for no limit
+     * @param bornBefore the birth date to count up to, exclusive, null for no
+     * limit
+     * @return the customer counts born in the range, indexed by Gender
+     * ordinal and followed by the count of customers without a gender
+     */
+    private int[] countByGender(LocalDate bornFrom, LocalDate bornBefore) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> cq = cb.createQuery(Object[].class);
+        Root<Customer> customer = cq.from(Customer.class);
+        Path<LocalDate> birthDate = customer.get("birthDate");
+        List<Predicate> predicates = new ArrayList<>();
+        predicates.add(cb.isNotNull(birthDate));
+        if (bornFrom != null) {
+            predicates.add(cb.greaterThanOrEqualTo(birthDate, bornFrom));
+        }
+        if (bornBefore != null) {
+            predicates.add(cb.lessThan(birthDate, bornBefore));
+        }
+        Path<Gender> gender = customer.get("gender");
+        cq.multiselect(gender, cb.count(customer))
+                .where(predicates.toArray(new Predicate[predicates.size()]))
+                .groupBy(gender);
+        int[] counts = new int[Gender.values().length + 1];
+        for (Object[] row : entityManager.createQuery(cq).getResultList()) {
+            int index = row[0] == null ? Gender.values().length
+                    : ((Gender) row[0]).ordinal();
+            counts[index] = ((Long) row[1]).intValue();
+        }
+        return counts;
+    }
+
+    /**
+     * Fetches a single page of customers, so that lazy loading components
+     * like Grid never need to keep the whole table in memory.
+     *
+     * @param filter the filter, null or empty for all customers
+     * @param offset the index of the first customer to return
+     * @param limit the maximum number of customers to return
+     * @param sortOrders the sort orders requested by the component
+     * @return the requested page of customers
+     */
+    public List<CustomerSummary> fetch(String filter, int offset, int limit,
+            List<QuerySortOrder> sortOrders) {
+        return fetch(filter, null, offset, offset, limit, sortOrders);
+    }
+
+    /**
+     * Fetches a page of customers that follow the given key in the listing.
+     * Unlike plain OFFSET paging, the database can seek directly to the key
+     * using the (column, id) index of the sort column, so fetching deep pages
+     * costs about the same as fetching the first one.
+     * <p>
+     * Customers without a value in the sort column are listed last in both
+     * directions, whatever the null ordering of the database. They are
+     * queried separately from the customers with a value, so neither query
+     * depends on where the database sorts nulls.
+     * </p>
+     *
+     * @param filter the filter, null or empty for all customers
+     * @param after the key of the row preceding the page, created with the
+     * same sort orders, or null to start from the beginning
+     * @param skip the number of rows to skip after the key
+     * @param offset the index of the first customer to return, used instead
+     * of the key if the customer of the key no longer matches the filter
+     * @param limit the maximum number of customers to return
+     * @param sortOrders the sort orders requested by the component
+     * @return the requested page of customers
+     * @see CustomerKey#of(CustomerSummary, List)
+     */
+    public List<CustomerSummary> fetch(String filter, CustomerKey after,
+            int skip, int offset, int limit, List<QuerySortOrder> sortOrders) {
+        StringBuilder key = new StringBuilder("fetch:").append(filter)
+                .append(':').append(skip).append(':').append(offset)
+                .append(':').append(limit);
+        if (after != null) {
+            key.append(':').append(after.getSortValue()).append(':').append(
+                    after.getId());
+        }
+        for (QuerySortOrder sortOrder : sortOrders) {
+            key.append(':').append(sortOrder.getSorted()).append(' ').append(
+                    sortOrder.getDirection());
+        }
+        return queryCache.get(key.toString(), () -> fetchPage(filter, after,
+                skip, offset, limit, sortOrders));
+    }
+
+    private List<CustomerSummary> fetchPage(String filter, CustomerKey after,
+            int skip, int offset, int limit, List<QuerySortOrder> sortOrders) {
+        if (filter != null && !filter.isEmpty()) {
+            return fetchFromIndex(filter, after, skip, offset, limit,
+                    sortOrders);
+        }
+        QuerySortOrder sortOrder = sortOrders.stream()
+                .filter(o -> SORTABLE_PROPERTIES.contains(o.getSorted()))
+                .findFirst().orElse(null);
+        List<Condition> segments;
+        if (sortOrder == null) {
+            segments = Collections.singletonList(after == null ? null
+                    : (cb, customer) -> idAfter(cb, customer, after.getId(),
+                            true));
+        } else {
+            // listings sorted by several columns have no key, and are only
+            // split by the first column
+            segments = segmentsAfter(after, sortOrder);
+        }
+        return fetchSegments(segments, sortOrders, skip, limit);
+    }
+
+    /**
+     * Splits the listing sorted by one column into consecutive segments
+     * that follow the key: the customers with the value of the key and a
+     * following id, the customers with following values, and the customers
+     * without a value, which come last in both directions. The database
+     * reads each segment from the (column, id) index starting at its first
+     * row, so it seeks to the key even when many customers share its value,
+     * and the null ordering of the database doesn't matter.
+     *
+     * @param key the key of the row preceding the page, null to list from
+     * the beginning
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<Condition> segmentsAfter(CustomerKey key,
+            QuerySortOrder sortOrder) {
+        String property = sortOrder.getSorted();
+        boolean ascending = sortOrder.getDirection()
+                == SortDirection.ASCENDING;
+        Condition nulls = (cb, customer) -> cb.isNull(customer.get(property));
+        List<Condition> segments = new ArrayList<>();
+        if (key == null) {
+            segments.add((cb, customer) -> cb.isNotNull(customer.get(
+                    property)));
+            segments.add(nulls);
+        } else if (key.getSortValue() == null) {
+            segments.add((cb, customer) -> cb.and(nulls.toPredicate(cb,
+                    customer), idAfter(cb, customer, key.getId(), ascending)));
+        } else {
+            Comparable value = key.getSortValue();
+            segments.add((cb, customer) -> cb.and(cb.equal(customer.get(
+                    property), value), idAfter(cb, customer, key.getId(),
+                            ascending)));
+            segments.add((cb, customer) -> {
+                Path path = customer.get(property);
+                return ascending ? cb.greaterThan(path, value)
+                        : cb.lessThan(path, value);
+            });
+            segments.add(nulls);
+        }
+        return segments;
+    }
+
+    private static Predicate idAfter(CriteriaBuilder cb,
+            Root<Customer> customer, int id, boolean ascending) {
+        Path<Integer> path = customer.get("id");
+        return ascending ? cb.greaterThan(path, id) : cb.lessThan(path, id);
+    }
+
+    /**
+     * Fetches a page from consecutive segments of the listing. The rows to
+     * skip are skipped in the first segments, which are only counted when
+     * the page starts past their end.
+     */
+    private List<CustomerSummary> fetchSegments(List<Condition> segments,
+            List<QuerySortOrder> sortOrders, int skip, int limit) {
+        List<CustomerSummary> page = new ArrayList<>();
+        for (Condition segment : segments) {
+            if (page.size() == limit) {
+                break;
+            }
+            List<CustomerSummary> rows = fetchSegment(segment, sortOrders,
+                    skip, limit - page.size());
+            skip = rows.isEmpty() && skip > 0
+                    ? Math.max(0, skip - count(segment)) : 0;
+            page.addAll(rows);
+        }
+        return page;
+    }
+
+    /**
+     * A condition of a customer query.
+     */
+    private interface Condition {
+
+        Predicate toPredicate(CriteriaBuilder cb, Root<Customer> customer);
+    }
+
+    /**
+     * Reads the ids of a page of a segment first and then the listed columns
+     * of those customers. The id query is answered from the (column, id)
+     * index alone, which also makes H2 seek in it instead of scanning the
+     * primary key for the id condition of the key. Pages in id order are
+     * read from the primary key directly.
+     *
+     * @param where the condition, null for all customers
+     * @return the listed columns of the matching customers
+     */
+    private List<CustomerSummary> fetchSegment(Condition where,
+            List<QuerySortOrder> sortOrders, int firstResult, int maxResults) {
+        if (sortOrders.stream().noneMatch(
+                o -> SORTABLE_PROPERTIES.contains(o.getSorted()))) {
+            // only the listed columns, no entities (or the location blob)
+            return select(CustomerSummary.class, (cb, customer) -> cb
+                    .construct(CustomerSummary.class, customer.get("id"),
+                            customer.get("firstName"),
+                            customer.get("lastName"), customer.get("email"),
+                            customer.get("status")), where, sortOrders,
+                    firstResult, maxResults);
+        }
+        return findSummaries(select(Integer.class,
+                (cb, customer) -> customer.get("id"), where, sortOrders,
+                firstResult, maxResults));
+    }
+
+    /**
+     * @param where the condition, null for all customers
+     */
+    private <T> List<T> select(Class<T> type, BiFunction<CriteriaBuilder,
+            Root<Customer>, Selection<T>> selection, Condition where,
+            List<QuerySortOrder> sortOrders, int firstResult, int maxResults) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> cq = cb.createQuery(type);
+        Root<Customer> customer = cq.from(Customer.class);
+        if (where != null) {
+            cq.where(where.toPredicate(cb, customer));
+        }
+        cq.select(selection.apply(cb, customer))
+                .orderBy(orderBy(cb, customer, sortOrders));
+        return entityManager.createQuery(cq)
+                .setFirstResult(firstResult)
+                .setMaxResults(maxResults)
+                .getResultList();
+    }
+
+    private int count(Condition where) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> cq = cb.createQuery(Long.class);
+        Root<Customer> customer = cq.from(Customer.class);
+        cq.select(cb.count(customer));
+        if (where != null) {
+            cq.where(where.toPredicate(cb, customer));
+        }
+        return entityManager.createQuery(cq).getSingleResult().intValue();
+    }
+
+    /**
+     * @return the number of customers in the database
+     */
+    public int count() {
+        return queryCache.get("count", () -> entityManager.createNamedQuery(
+                "Customer.count", Long.class).getSingleResult().intValue());
+    }
+
+    /**
+     * @return true if there is at least one customer in the database
+     */
+    public boolean exists() {
+        return !entityManager.createNamedQuery("Customer.findIds",
+                Integer.class)
+                .setMaxResults(1)
+                .getResultList().isEmpty();
+    }
+
+    /**
+     * @param filter the filter, null or empty for all customers
+     * @return the number of customers matching the filter
+     */
+    public int count(String filter) {
         if (filter == null || filter.isEmpty()) {
-            return findAll();
+            return count();
+        }
+        return searchIndex.count(filter);
+    }
+
+    /**
+     * Answers a filter query from the search index and loads only the
+     * customers on the requested page from the database.
+     */
+    private List<CustomerSummary> fetchFromIndex(String filter,
+            CustomerKey after, int skip, int offset, int limit,
+            List<QuerySortOrder> sortOrders) {
+        int[] ids = searchIndex.search(filter, sortOrders);
+        int start = after == null ? offset
+                : pageStart(ids, after.getId(), skip, offset);
+        List<Integer> pageIds = new ArrayList<>();
+        for (int i = start; i < ids.length && pageIds.size() < limit; i++) {
+            pageIds.add(ids[i]);
+        }
+        return findSummaries(pageIds);
+    }
+
+    /**
+     * Finds the first customer of a page in the ids of a filter result.
+     *
+     * @param ids the ids of the matching customers, in the listing order
+     * @param afterId the id of the customer preceding the page
+     * @param skip the number of customers to skip after it
+     * @param offset the index to fall back to if the customer preceding the
+     * page is no longer in the result, e.g. after it was edited to not match
+     * the filter
+     * @return the index of the first customer of the page in the ids
+     */
+    static int pageStart(int[] ids, int afterId, int skip, int offset) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == afterId) {
+                return i + 1 + skip;
+            }
         }
-        filter = filter.toLowerCase();
-        return entityManager.createNamedQuery("Customer.findByName",
-                Customer.class)
-                .setParameter("filter", filter + "%").getResultList();
+        return offset;
+    }
+
+    /**
+     * Loads the listed columns of several customers with one query.
+     *
+     * @param ids the ids of the customers
+     * @return summaries of the customers with the given ids, in the same
+     * order, without the ones that don't exist
+     */
+    public List<CustomerSummary> findSummaries(List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Integer, CustomerSummary> byId = new HashMap<>();
+        for (CustomerSummary c : entityManager.createNamedQuery(
+                "Customer.findSummariesByIds", CustomerSummary.class)
+                .setParameter("ids", ids).getResultList()) {
+            byId.put(c.getId(), c);
+        }
+        List<CustomerSummary> customers = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            // may have been removed after the search
+            if (byId.containsKey(id)) {
+                customers.add(byId.get(id));
+            }
+        }
+        return customers;
+    }
+
+    /**
+     * Translates the sort orders requested by the UI to order by clauses, so
+     * that the database does the sorting using the indexes of the sortable
+     * columns. Properties that are not sortable are ignored.
+     */
+    private List<Order> orderBy(CriteriaBuilder cb, Root<Customer> customer,
+            List<QuerySortOrder> sortOrders) {
+        List<Order> orders = new ArrayList<>();
+        boolean idAscending = true;
+        for (QuerySortOrder sortOrder : sortOrders) {
+            if (!SORTABLE_PROPERTIES.contains(sortOrder.getSorted())) {
+                continue;
+            }
+            boolean ascending = sortOrder.getDirection()
+                    == SortDirection.ASCENDING;
+            if (orders.isEmpty()) {
+                idAscending = ascending;
+            }
+            Path<?> path = customer.get(sortOrder.getSorted());
+            if (!orders.isEmpty()) {
+                // customers without a value last, whatever the null ordering
+                // of the database, as the segments do for the first column
+                orders.add(cb.asc(cb.selectCase().when(cb.isNull(path), 1)
+                        .otherwise(0)));
+            }
+            orders.add(ascending ? cb.asc(path) : cb.desc(path));
+        }
+        // id as the last sort criteria keeps the page boundaries stable. It
+        // follows the direction of the first column, so that a descending
+        // page is read from the descending (column, id) index.
+        Path<?> id = customer.get("id");
+        orders.add(idAscending ? cb.asc(id) : cb.desc(id));
+        return orders;
     }
 
     /**
      * Sample data generation
      */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void ensureTestData() {
-        if (findAll().isEmpty()) {
+        if (!exists()) {
             final double latBase = 42.3791618;
             final double lonBase = -71.1138139;
             GeometryFactory factory = new GeometryFactory();
             final String[] names = new String[]{"Gabrielle Patel", "Brian Robinson", "Eduardo Haugen", "Koen Johansen", "Alejandro Macdonald", "Angel Karlsson", "Yahir Gustavsson", "Haiden Svensson", "Emily Stewart", "Corinne Davis", "Ryann Davis", "Yurem Jackson", "Kelly Gustavsson", "Eileen Walker", "Katelyn Martin", "Israel Carlsson", "Quinn Hansson", "Makena Smith", "Danielle Watson", "Leland Harris", "Gunner Karlsen", "Jamar Olsson", "Lara Martin", "Ann Andersson", "Remington Andersson", "Rene Carlsson", "Elvis Olsen", "Solomon Olsen", "Jaydan Jackson", "Bernard Nilsen"};
             Random r = new Random(0);
+            List<Customer> customers = new ArrayList<>();
             for (String name : names) {
                 String[] split = name.split(" ");
                 Customer c = new Customer();
@@ -110,15 +813,32 @@ public class CustomerService {
                 double lon = lonBase + 0.02 * r.nextDouble() - 0.02 * r.
                         nextDouble();
                 c.setLocation(factory.createPoint(new Coordinate(lon, lat)));
-                saveOrPersist(c);
+                customers.add(c);
             }
+            context.getBusinessObject(CustomerService.class).insertAll(
+                    customers.iterator(), DEFAULT_BATCH_SIZE);
         }
     }
 
+    /**
+     * Deletes all customers with a bulk update, bypassing the shared cache
+     * and the in-memory indexes.
+     *
+     * @return the number of customers deleted
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int deleteAll() {
+        int count = entityManager.createQuery(
+                "DELETE FROM Customer c WHERE c.id > 0").executeUpdate();
+        changeEvent.fire(CustomerChange.all());
+        return count;
+    }
+
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void resetTestData() {
-        if(!findAll().isEmpty()) {
-            entityManager.createQuery("DELETE FROM Customer c WHERE c.id > 0").
-                    executeUpdate();
+        if (exists()) {
+            // committed before the new customers are inserted
+            context.getBusinessObject(CustomerService.class).deleteAll();
         }
         ensureTestData();
     }
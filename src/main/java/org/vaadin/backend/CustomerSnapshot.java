@@ -0,0 +1,342 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import org.vaadin.backend.domain.AgeGroup;
+import org.vaadin.backend.domain.CustomerStatus;
+import org.vaadin.backend.domain.Gender;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * An immutable, column oriented copy of the customer attributes used in
+ * analysis. Each attribute is kept in its own primitive array, so
+ * aggregations run over millions of customers without creating any
+ * objects per customer. The rows are in id order, so that changed
+ * customers can be merged into the next snapshot.
+ */
+public class CustomerSnapshot {
+
+    /**
+     * The code of a missing value in the byte and int columns.
+     */
+    private static final byte NONE = -1;
+
+    private static final int NO_BIRTH_DATE = Integer.MIN_VALUE;
+
+    // the fewest rows worth aggregating in a part of their own
+    private static final int MIN_PART_ROWS = 1 << 16;
+
+    private final Executor executor;
+    private final int size;
+    private final int[] ids;
+    private final byte[] statuses;
+    private final byte[] genders;
+    private final int[] birthDays;
+    private final double[] latitudes;
+    private final double[] longitudes;
+
+    /**
+     * The dimensions a histogram can be computed over. Each has one bucket
+     * per value and a last one for customers without a value.
+     */
+    public enum Dimension {
+
+        STATUS(CustomerStatus.values().length),
+        GENDER(Gender.values().length),
+        AGE_GROUP(AgeGroup.values().length);
+
+        private final int buckets;
+
+        Dimension(int values) {
+            this.buckets = values + 1;
+        }
+
+        public int getBuckets() {
+            return buckets;
+        }
+    }
+
+    /**
+     * @param executor the executor aggregations are run in, the managed
+     * executor of the container in production
+     * @param columns the customers, not to be changed afterwards
+     */
+    CustomerSnapshot(Executor executor, Columns columns) {
+        this.executor = executor;
+        this.size = columns.size;
+        this.ids = columns.ids;
+        this.statuses = columns.statuses;
+        this.genders = columns.genders;
+        this.birthDays = columns.birthDays;
+        this.latitudes = columns.latitudes;
+        this.longitudes = columns.longitudes;
+    }
+
+    /**
+     * @return the number of customers in the snapshot
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Builds the next snapshot by replacing the rows of changed customers
+     * with their current values, in one pass over the columns.
+     *
+     * @param changedIds the ids of the changed customers, sorted
+     * @param changed the current values of the changed customers that
+     * still exist, in id order
+     * @return the new snapshot
+     */
+    CustomerSnapshot withChanges(int[] changedIds, Columns changed) {
+        Columns next = new Columns(size + changed.size);
+        int c = 0;
+        int r = 0;
+        for (int row = 0; row < size; row++) {
+            int id = ids[row];
+            while (r < changed.size && changed.ids[r] < id) {
+                next.add(changed, r++);
+            }
+            while (c < changedIds.length && changedIds[c] < id) {
+                c++;
+            }
+            // deleted customers are dropped, the others were added from
+            // the changed rows
+            if (c == changedIds.length || changedIds[c] != id) {
+                next.add(ids[row], statuses[row], genders[row],
+                        birthDays[row], latitudes[row], longitudes[row]);
+            }
+        }
+        while (r < changed.size) {
+            next.add(changed, r++);
+        }
+        return new CustomerSnapshot(executor, next);
+    }
+
+    /**
+     * Counts the customers in each combination of values of the given
+     * dimensions, in parallel.
+     *
+     * @param dimensions the dimensions to group the customers by
+     * @return the counts
+     */
+    public Histogram histogram(Dimension... dimensions) {
+        return histogram(null, dimensions);
+    }
+
+    /**
+     * Counts the customers located in an area in each combination of values
+     * of the given dimensions, in parallel.
+     *
+     * @param area the area as {minLat, minLon, maxLat, maxLon}, null for all
+     * customers
+     * @param dimensions the dimensions to group the customers by
+     * @return the counts
+     */
+    public Histogram histogram(double[] area, Dimension... dimensions) {
+        Kernel kernel = new Kernel(dimensions, area,
+                LocalDate.now().getYear());
+        List<int[]> parts = ParallelParts.compute(executor, size,
+                MIN_PART_ROWS, (from, to) -> {
+                    int[] partCounts = new int[kernel.buckets];
+                    kernel.count(from, to, partCounts);
+                    return partCounts;
+                });
+        int[] counts = new int[kernel.buckets];
+        for (int[] partCounts : parts) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += partCounts[i];
+            }
+        }
+        return new Histogram(dimensions, counts);
+    }
+
+    /**
+     * Computes the histogram bucket of single rows.
+     */
+    private class Kernel {
+
+        final Dimension[] dimensions;
+        final int buckets;
+        final double[] area;
+        // the first birth day of each age group, from youngest to oldest
+        final long[] ageGroupStarts = new long[AgeGroup.values().length];
+
+        Kernel(Dimension[] dimensions, double[] area, int year) {
+            this.dimensions = dimensions;
+            this.area = area;
+            int b = 1;
+            for (Dimension d : dimensions) {
+                b *= d.buckets;
+            }
+            buckets = b;
+            for (AgeGroup group : AgeGroup.values()) {
+                LocalDate from = group.getBornFrom(year);
+                ageGroupStarts[group.ordinal()] = from == null
+                        ? Long.MIN_VALUE : from.toEpochDay();
+            }
+        }
+
+        void count(int from, int to, int[] counts) {
+            for (int row = from; row < to; row++) {
+                if (area != null && !(latitudes[row] >= area[0]
+                        && latitudes[row] <= area[2]
+                        && longitudes[row] >= area[1]
+                        && longitudes[row] <= area[3])) {
+                    continue;
+                }
+                int bucket = 0;
+                for (Dimension d : dimensions) {
+                    bucket = bucket * d.buckets + value(d, row);
+                }
+                counts[bucket]++;
+            }
+        }
+
+        private int value(Dimension dimension, int row) {
+            switch (dimension) {
+                case STATUS:
+                    return statuses[row] == NONE
+                            ? dimension.buckets - 1 : statuses[row];
+                case GENDER:
+                    return genders[row] == NONE
+                            ? dimension.buckets - 1 : genders[row];
+                default:
+                    int birthDay = birthDays[row];
+                    if (birthDay == NO_BIRTH_DATE) {
+                        return dimension.buckets - 1;
+                    }
+                    for (int g = 0; g < ageGroupStarts.length; g++) {
+                        if (birthDay >= ageGroupStarts[g]) {
+                            return g;
+                        }
+                    }
+                    return ageGroupStarts.length - 1;
+            }
+        }
+    }
+
+    /**
+     * Growable columns filled in id order, which a snapshot is built from.
+     */
+    static class Columns {
+
+        private int size;
+        private int[] ids;
+        private byte[] statuses;
+        private byte[] genders;
+        private int[] birthDays;
+        private double[] latitudes;
+        private double[] longitudes;
+
+        Columns(int capacity) {
+            capacity = Math.max(capacity, 1);
+            ids = new int[capacity];
+            statuses = new byte[capacity];
+            genders = new byte[capacity];
+            birthDays = new int[capacity];
+            latitudes = new double[capacity];
+            longitudes = new double[capacity];
+        }
+
+        /**
+         * Appends a customer, which must have a greater id than the
+         * customers added before.
+         */
+        void add(int id, CustomerStatus status, Gender gender,
+                LocalDate birthDate, Double latitude, Double longitude) {
+            add(id, status == null ? NONE : (byte) status.ordinal(),
+                    gender == null ? NONE : (byte) gender.ordinal(),
+                    birthDate == null ? NO_BIRTH_DATE
+                            : (int) birthDate.toEpochDay(),
+                    latitude == null ? Double.NaN : latitude,
+                    longitude == null ? Double.NaN : longitude);
+        }
+
+        private void add(Columns source, int row) {
+            add(source.ids[row], source.statuses[row], source.genders[row],
+                    source.birthDays[row], source.latitudes[row],
+                    source.longitudes[row]);
+        }
+
+        private void add(int id, byte status, byte gender, int birthDay,
+                double latitude, double longitude) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                statuses = Arrays.copyOf(statuses, capacity);
+                genders = Arrays.copyOf(genders, capacity);
+                birthDays = Arrays.copyOf(birthDays, capacity);
+                latitudes = Arrays.copyOf(latitudes, capacity);
+                longitudes = Arrays.copyOf(longitudes, capacity);
+            }
+            ids[size] = id;
+            statuses[size] = status;
+            genders[size] = gender;
+            birthDays[size] = birthDay;
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+            size++;
+        }
+    }
+
+    /**
+     * Customer counts over one or more dimensions.
+     */
+    public static class Histogram implements Serializable {
+
+        private final Dimension[] dimensions;
+        private final int[] counts;
+
+        Histogram(Dimension[] dimensions, int[] counts) {
+            this.dimensions = dimensions;
+            this.counts = counts;
+        }
+
+        /**
+         * @param buckets the bucket in each dimension, the ordinal of the
+         * value or {@link Dimension#getBuckets()} - 1 for missing values
+         * @return the number of customers in the buckets
+         */
+        public int getCount(int... buckets) {
+            int index = 0;
+            for (int i = 0; i < dimensions.length; i++) {
+                index = index * dimensions[i].buckets + buckets[i];
+            }
+            return counts[index];
+        }
+
+        public int getTotal() {
+            return Arrays.stream(counts).sum();
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import org.vaadin.backend.domain.CustomerStatus;
+import org.vaadin.backend.domain.Gender;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Provides the current {@link CustomerSnapshot}. The snapshot is built from
+ * the database on first use. Customers changed since are re-read by id in
+ * the background and merged into the next snapshot, so analysis may lag the
+ * database by {@link #REFRESH_SECONDS}. Only a change to any number of
+ * customers rebuilds the snapshot from scratch.
+ */
+@ApplicationScoped
+public class CustomerSnapshotStore {
+
+    private static final Logger LOGGER = Logger.getLogger(
+            CustomerSnapshotStore.class.getName());
+
+    private static final long REFRESH_SECONDS = 30;
+
+    private static final int LOAD_CHUNK_SIZE = 10000;
+
+    private static final String SELECT_COLUMNS = "SELECT c.id, c.status, "
+            + "c.gender, c.birthDate, c.latitude, c.longitude FROM Customer c ";
+
+    @PersistenceContext(unitName = "customer-pu")
+    private EntityManager entityManager;
+
+    @Inject
+    CustomerChangeChannel channel;
+
+    @Resource
+    ManagedScheduledExecutorService executor;
+
+    private final ChangedCustomers changes = new ChangedCustomers();
+
+    private ScheduledFuture<?> refresh;
+
+    private volatile CustomerSnapshot snapshot;
+
+    // set when changed ids were taken but could not be applied
+    private boolean reload;
+
+    @PostConstruct
+    void init() {
+        channel.subscribe(changes);
+        refresh = executor.scheduleWithFixedDelay(this::refresh,
+                REFRESH_SECONDS, REFRESH_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void destroy() {
+        refresh.cancel(false);
+    }
+
+    /**
+     * @return the latest snapshot of the customers
+     */
+    public CustomerSnapshot getSnapshot() {
+        CustomerSnapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    // the load reads the changed customers anyway
+                    changes.takeAll();
+                    changes.take(Integer.MAX_VALUE);
+                    snapshot = load();
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Brings the snapshot up to date. Only run by the refresh task, so the
+     * new snapshot is built while readers keep using the old one until it
+     * is replaced. Failures are logged and followed by a full reload on the
+     * next run, as the taken ids are gone and an exception would cancel the
+     * task.
+     */
+    private synchronized void refresh() {
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            if (changes.takeAll() || reload) {
+                reload = false;
+                changes.take(Integer.MAX_VALUE);
+                snapshot = load();
+            } else if (!changes.isEmpty()) {
+                snapshot = applyChanges(snapshot);
+            }
+        } catch (RuntimeException e) {
+            reload = true;
+            LOGGER.log(Level.WARNING, "Refreshing the customer snapshot failed",
+                    e);
+        }
+    }
+
+    private CustomerSnapshot applyChanges(CustomerSnapshot current) {
+        int[] changedIds = changes.take(Integer.MAX_VALUE).stream()
+                .mapToInt(Integer::intValue).sorted().toArray();
+        CustomerSnapshot.Columns changed = new CustomerSnapshot.Columns(
+                changedIds.length);
+        for (int from = 0; from < changedIds.length;
+                from += ChangedCustomers.CHUNK_SIZE) {
+            int to = Math.min(from + ChangedCustomers.CHUNK_SIZE,
+                    changedIds.length);
+            List<Integer> ids = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                ids.add(changedIds[i]);
+            }
+            addRows(changed, entityManager.createQuery(SELECT_COLUMNS
+                    + "WHERE c.id IN :ids ORDER BY c.id", Object[].class)
+                    .setParameter("ids", ids)
+                    .getResultList());
+        }
+        return current.withChanges(changedIds, changed);
+    }
+
+    private CustomerSnapshot load() {
+        CustomerSnapshot.Columns columns = new CustomerSnapshot.Columns(
+                LOAD_CHUNK_SIZE);
+        int lastId = Integer.MIN_VALUE;
+        List<Object[]> rows;
+        do {
+            rows = entityManager.createQuery(SELECT_COLUMNS
+                    + "WHERE c.id > :lastId ORDER BY c.id", Object[].class)
+                    .setParameter("lastId", lastId)
+                    .setMaxResults(LOAD_CHUNK_SIZE)
+                    .getResultList();
+            if (!rows.isEmpty()) {
+                lastId = (Integer) rows.get(rows.size() - 1)[0];
+            }
+            addRows(columns, rows);
+        } while (rows.size() == LOAD_CHUNK_SIZE);
+        return new CustomerSnapshot(executor, columns);
+    }
+
+    private static void addRows(CustomerSnapshot.Columns columns,
+            List<Object[]> rows) {
+        for (Object[] row : rows) {
+            columns.add((Integer) row[0], (CustomerStatus) row[1],
+                    (Gender) row[2], (LocalDate) row[3], (Double) row[4],
+                    (Double) row[5]);
+        }
+    }
+}
@@ -0,0 +1,589 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Initialized;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * An in-memory spatial index of customer locations for map bounds and
+ * nearest customer queries without database round trips. Coordinates are
+ * kept in packed primitive arrays, bucketed by a fixed grid of
+ * {@link #CELL_DEGREES} sized cells, and ids are mapped to their slots in
+ * a {@link LongIntMap}, so no objects are created per customer. The map
+ * clusters are also served from here, see {@link CustomerClusters}.
+ * <p>
+ * The index is loaded when the application starts, updated from the
+ * changes announced through the {@link CustomerChangeChannel} and reloaded
+ * after bulk changes.
+ * </p>
+ */
+@ApplicationScoped
+public class CustomerSpatialIndex {
+
+    /**
+     * The size of the grid cells, about a kilometer in latitude.
+     */
+    static final double CELL_DEGREES = 0.01;
+
+    private static final double KM_PER_DEGREE = 111.32;
+
+    private static final int LOAD_CHUNK_SIZE = 10000;
+
+    @PersistenceContext(unitName = "customer-pu")
+    private EntityManager entityManager;
+
+    @Inject
+    CustomerChangeChannel channel;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // slot storage, slots of removed customers are reused
+    private int[] ids = new int[1024];
+    private double[] lats = new double[1024];
+    private double[] lons = new double[1024];
+    private int slotCount;
+    private final Slots freeSlots = new Slots();
+
+    private final LongIntMap slotsById = new LongIntMap();
+
+    // the slots in each grid cell
+    private final Map<Long, Slots> cells = new HashMap<>();
+
+    // the map clusters of the zoomed out levels
+    private final CustomerClusters clusters = new CustomerClusters();
+
+    // the grid cells that have had customers since the last load, bounding
+    // the nearest customer search
+    private long minCellX = Long.MAX_VALUE;
+    private long maxCellX = Long.MIN_VALUE;
+    private long minCellY = Long.MAX_VALUE;
+    private long maxCellY = Long.MIN_VALUE;
+
+    private volatile boolean loaded;
+
+    private final ChangedCustomers changes = new ChangedCustomers();
+
+    public CustomerSpatialIndex() {
+    }
+
+    /**
+     * Indexes the given locations instead of loading them from the database,
+     * for tests and benchmarks.
+     */
+    CustomerSpatialIndex(int[] ids, double[] lats, double[] lons) {
+        for (int i = 0; i < ids.length; i++) {
+            add(ids[i], lats[i], lons[i]);
+        }
+        loaded = true;
+    }
+
+    @PostConstruct
+    void init() {
+        channel.subscribe(changes);
+    }
+
+    void startup(@Observes @Initialized(ApplicationScoped.class) Object init) {
+        ensureLoaded();
+    }
+
+    /**
+     * @param minLat the southern edge of the area
+     * @param minLon the western edge of the area
+     * @param maxLat the northern edge of the area
+     * @param maxLon the eastern edge of the area
+     * @param limit the maximum number of customers to return
+     * @return the customers in the area
+     */
+    public Locations range(double minLat, double minLon, double maxLat,
+            double maxLon, int limit) {
+        ensureCurrent();
+        Locations result = new Locations(Math.min(limit, 256));
+        lock.readLock().lock();
+        try {
+            visitRange(minLat, minLon, maxLat, maxLon, slot -> {
+                if (result.size() == limit) {
+                    return false;
+                }
+                result.add(ids[slot], lats[slot], lons[slot]);
+                return true;
+            });
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Groups the customers in an area into clusters for map display. The
+     * clusters of the zoomed out levels are kept up to date with the index,
+     * those of closer levels are aggregated from the customers in the area,
+     * which is small at those levels.
+     *
+     * @param zoom the zoom level, clamped to at most
+     * {@link CustomerClusters#MAX_ZOOM}
+     * @param minLat the southern edge of the area
+     * @param minLon the western edge of the area
+     * @param maxLat the northern edge of the area
+     * @param maxLon the eastern edge of the area
+     * @return the clusters in the area
+     */
+    public List<CustomerClusters.Cluster> clusters(int zoom, double minLat,
+            double minLon, double maxLat, double maxLon) {
+        ensureCurrent();
+        zoom = Math.max(0, Math.min(CustomerClusters.MAX_ZOOM, zoom));
+        lock.readLock().lock();
+        try {
+            if (zoom <= CustomerClusters.STORED_ZOOM) {
+                return clusters.level(zoom).clusters(minLat, minLon, maxLat,
+                        maxLon);
+            }
+            // all customers of the cells overlapping the area, so that a
+            // cluster doesn't change with the edges of the view
+            CustomerClusters.Level level = new CustomerClusters.Level(zoom);
+            double[] bounds = level.cellBounds(minLat, minLon, maxLat,
+                    maxLon);
+            visitRange(bounds[0], bounds[1], bounds[2], bounds[3], slot -> {
+                level.add(ids[slot], lats[slot], lons[slot]);
+                return true;
+            });
+            return level.clusters(minLat, minLon, maxLat, maxLon);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Visits the slots of the customers in an area, looking up the grid
+     * cells of the area or, if there are fewer occupied cells, going
+     * through those. Must be called with the lock held.
+     *
+     * @param visitor returns false to stop visiting
+     */
+    private void visitRange(double minLat, double minLon, double maxLat,
+            double maxLon, IntPredicate visitor) {
+        long minX = cellIndex(minLon);
+        long maxX = cellIndex(maxLon);
+        long minY = cellIndex(minLat);
+        long maxY = cellIndex(maxLat);
+        if ((maxX - minX + 1) * (maxY - minY + 1) < cells.size()) {
+            for (long x = minX; x <= maxX; x++) {
+                for (long y = minY; y <= maxY; y++) {
+                    if (!visit(cells.get(cellKey(x, y)), minLat, minLon,
+                            maxLat, maxLon, visitor)) {
+                        return;
+                    }
+                }
+            }
+        } else {
+            for (Map.Entry<Long, Slots> cell : cells.entrySet()) {
+                long x = cell.getKey() >> 32;
+                long y = (int) (long) cell.getKey();
+                if (x >= minX && x <= maxX && y >= minY && y <= maxY
+                        && !visit(cell.getValue(), minLat, minLon, maxLat,
+                                maxLon, visitor)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the customers closest to the given location by searching grid
+     * cells in growing rings around it. Only the cells on the perimeter of
+     * each ring that overlap the occupied part of the grid are visited, and
+     * the search stops once no cell in the next ring can be closer than the
+     * k-th best customer found.
+     *
+     * @param lat the latitude of the location
+     * @param lon the longitude of the location
+     * @param k the number of customers to find
+     * @return at most k customers, the closest first
+     */
+    public Locations nearest(double lat, double lon, int k) {
+        if (k <= 0) {
+            return new Locations(0);
+        }
+        ensureCurrent();
+        long cx = cellIndex(lon);
+        long cy = cellIndex(lat);
+        double cosLat = Math.cos(Math.toRadians(lat));
+        lock.readLock().lock();
+        try {
+            Nearest nearest = new Nearest(lat, lon, cosLat, k);
+            // rings closer than the occupied cells are empty, and rings past
+            // them have no customers
+            long firstRing = Math.max(0, Math.max(
+                    Math.max(minCellX - cx, cx - maxCellX),
+                    Math.max(minCellY - cy, cy - maxCellY)));
+            long lastRing = cells.isEmpty() ? -1 : Math.max(
+                    Math.max(cx - minCellX, maxCellX - cx),
+                    Math.max(cy - minCellY, maxCellY - cy));
+            for (long ring = firstRing; ring <= lastRing
+                    && nearest.visited < slotsById.size(); ring++) {
+                // customers outside the rings searched so far are at least
+                // this far away
+                double minDistance = (ring - 1) * CELL_DEGREES * KM_PER_DEGREE
+                        * cosLat;
+                if (nearest.found == k
+                        && nearest.distances[k - 1] <= minDistance) {
+                    break;
+                }
+                // the top and bottom rows, then the sides between them, as
+                // far as they overlap the occupied cells
+                long fromX = Math.max(cx - ring, minCellX);
+                long toX = Math.min(cx + ring, maxCellX);
+                long fromY = Math.max(cy - ring + 1, minCellY);
+                long toY = Math.min(cy + ring - 1, maxCellY);
+                nearest.searchRow(cy - ring, fromX, toX);
+                if (ring > 0) {
+                    nearest.searchRow(cy + ring, fromX, toX);
+                    nearest.searchColumn(cx - ring, fromY, toY);
+                    nearest.searchColumn(cx + ring, fromY, toY);
+                }
+            }
+            Locations result = new Locations(nearest.found);
+            for (int i = 0; i < nearest.found; i++) {
+                int slot = nearest.slots[i];
+                result.add(ids[slot], lats[slot], lons[slot]);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Drops the indexed locations, they are reloaded from the database on
+     * next use.
+     */
+    public void invalidate() {
+        lock.writeLock().lock();
+        try {
+            loaded = false;
+            clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Loads the index or reloads it after bulk changes, then re-reads the
+     * locations of the customers changed since the last query.
+     */
+    private void ensureCurrent() {
+        if (changes.takeAll()) {
+            invalidate();
+        }
+        ensureLoaded();
+        if (changes.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            List<Integer> changed;
+            while (!(changed = changes.take(ChangedCustomers.CHUNK_SIZE))
+                    .isEmpty()) {
+                changed.forEach(this::remove);
+                // deleted customers and those without a location are not
+                // found
+                for (Object[] row : entityManager.createQuery("SELECT c.id, "
+                        + "c.latitude, c.longitude FROM Customer c "
+                        + "WHERE c.id IN :ids AND c.latitude IS NOT NULL "
+                        + "AND c.longitude IS NOT NULL", Object[].class)
+                        .setParameter("ids", changed)
+                        .getResultList()) {
+                    add((Integer) row[0], (Double) row[1], (Double) row[2]);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                clear();
+                int lastId = Integer.MIN_VALUE;
+                List<Object[]> rows;
+                do {
+                    rows = entityManager.createQuery("SELECT c.id, "
+                            + "c.latitude, c.longitude FROM Customer c "
+                            + "WHERE c.id > :lastId AND c.latitude IS NOT NULL "
+                            + "AND c.longitude IS NOT NULL ORDER BY c.id",
+                            Object[].class)
+                            .setParameter("lastId", lastId)
+                            .setMaxResults(LOAD_CHUNK_SIZE)
+                            .getResultList();
+                    for (Object[] row : rows) {
+                        lastId = (Integer) row[0];
+                        add(lastId, (Double) row[1], (Double) row[2]);
+                    }
+                } while (rows.size() == LOAD_CHUNK_SIZE);
+                loaded = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void clear() {
+        slotCount = 0;
+        freeSlots.size = 0;
+        slotsById.clear();
+        cells.clear();
+        clusters.clear();
+        minCellX = minCellY = Long.MAX_VALUE;
+        maxCellX = maxCellY = Long.MIN_VALUE;
+    }
+
+    private void add(int id, double lat, double lon) {
+        int slot;
+        if (freeSlots.size > 0) {
+            slot = freeSlots.slots[--freeSlots.size];
+        } else {
+            if (slotCount == ids.length) {
+                ids = Arrays.copyOf(ids, slotCount * 2);
+                lats = Arrays.copyOf(lats, slotCount * 2);
+                lons = Arrays.copyOf(lons, slotCount * 2);
+            }
+            slot = slotCount++;
+        }
+        ids[slot] = id;
+        lats[slot] = lat;
+        lons[slot] = lon;
+        slotsById.put(id, slot);
+        clusters.add(id, lat, lon);
+        long x = cellIndex(lon);
+        long y = cellIndex(lat);
+        cells.computeIfAbsent(cellKey(x, y), k -> new Slots()).add(slot);
+        minCellX = Math.min(minCellX, x);
+        maxCellX = Math.max(maxCellX, x);
+        minCellY = Math.min(minCellY, y);
+        maxCellY = Math.max(maxCellY, y);
+    }
+
+    private void remove(int id) {
+        int slot = slotsById.remove(id);
+        if (slot < 0) {
+            return;
+        }
+        long key = cellKey(cellIndex(lons[slot]), cellIndex(lats[slot]));
+        Slots cell = cells.get(key);
+        cell.remove(slot);
+        if (cell.size == 0) {
+            cells.remove(key);
+        }
+        freeSlots.add(slot);
+        clusters.remove(id, lats[slot], lons[slot]);
+    }
+
+    private boolean visit(Slots cell, double minLat, double minLon,
+            double maxLat, double maxLon, IntPredicate visitor) {
+        if (cell == null) {
+            return true;
+        }
+        for (int i = 0; i < cell.size; i++) {
+            int slot = cell.slots[i];
+            if (lats[slot] >= minLat && lats[slot] <= maxLat
+                    && lons[slot] >= minLon && lons[slot] <= maxLon
+                    && !visitor.test(slot)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the equirectangular approximation of the distance in km, good
+     * enough for ranking nearby locations
+     */
+    private static double distance(double lat, double lon, double cosLat,
+            double lat2, double lon2) {
+        double dx = (lon2 - lon) * cosLat;
+        double dy = lat2 - lat;
+        return Math.sqrt(dx * dx + dy * dy) * KM_PER_DEGREE;
+    }
+
+    private static long cellIndex(double degrees) {
+        return (long) Math.floor(degrees / CELL_DEGREES);
+    }
+
+    private static long cellKey(long x, long y) {
+        return x << 32 | (y & 0xffffffffL);
+    }
+
+    /**
+     * The k closest slots found so far, sorted by distance.
+     */
+    private class Nearest {
+
+        final double lat;
+        final double lon;
+        final double cosLat;
+        final double[] distances;
+        final int[] slots;
+        int found;
+        // the number of customers in the searched cells
+        int visited;
+
+        Nearest(double lat, double lon, double cosLat, int k) {
+            this.lat = lat;
+            this.lon = lon;
+            this.cosLat = cosLat;
+            distances = new double[k];
+            slots = new int[k];
+        }
+
+        void searchRow(long y, long fromX, long toX) {
+            if (y >= minCellY && y <= maxCellY) {
+                for (long x = fromX; x <= toX; x++) {
+                    search(cells.get(cellKey(x, y)));
+                }
+            }
+        }
+
+        void searchColumn(long x, long fromY, long toY) {
+            if (x >= minCellX && x <= maxCellX) {
+                for (long y = fromY; y <= toY; y++) {
+                    search(cells.get(cellKey(x, y)));
+                }
+            }
+        }
+
+        void search(Slots cell) {
+            if (cell == null) {
+                return;
+            }
+            visited += cell.size;
+            int k = slots.length;
+            for (int i = 0; i < cell.size; i++) {
+                int slot = cell.slots[i];
+                double d = distance(lat, lon, cosLat, lats[slot], lons[slot]);
+                if (found < k || d < distances[found - 1]) {
+                    // insertion sort into the k best
+                    int j = found < k ? found++ : k - 1;
+                    while (j > 0 && distances[j - 1] > d) {
+                        distances[j] = distances[j - 1];
+                        slots[j] = slots[j - 1];
+                        j--;
+                    }
+                    distances[j] = d;
+                    slots[j] = slot;
+                }
+            }
+        }
+    }
+
+    /**
+     * An unordered, growable array of slot indexes.
+     */
+    private static class Slots {
+
+        int[] slots = new int[8];
+        int size;
+
+        void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+
+        void remove(int slot) {
+            for (int i = 0; i < size; i++) {
+                if (slots[i] == slot) {
+                    slots[i] = slots[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Customer ids and coordinates found by a query, in packed arrays.
+     */
+    public static class Locations implements Serializable {
+
+        private int[] ids;
+        private double[] lats;
+        private double[] lons;
+        private int size;
+
+        Locations(int capacity) {
+            ids = new int[Math.max(capacity, 1)];
+            lats = new double[ids.length];
+            lons = new double[ids.length];
+        }
+
+        void add(int id, double lat, double lon) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                lats = Arrays.copyOf(lats, size * 2);
+                lons = Arrays.copyOf(lons, size * 2);
+            }
+            ids[size] = id;
+            lats[size] = lat;
+            lons[size] = lon;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int getId(int index) {
+            return ids[index];
+        }
+
+        public double getLatitude(int index) {
+            return lats[index];
+        }
+
+        public double getLongitude(int index) {
+            return lons[index];
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import org.vaadin.backend.domain.AgeGroup;
+import org.vaadin.backend.domain.CustomerStatistics;
+import org.vaadin.backend.domain.CustomerStatus;
+import org.vaadin.backend.domain.Gender;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the customer statistics in memory, so the analysis view doesn't
+ * query the database at all. The counters are loaded once and updated from
+ * the changes announced through the {@link CustomerChangeChannel}: the
+ * counted values of a changed customer are re-read and, if they differ,
+ * the counters of the old values are decremented and those of the new ones
+ * incremented. A scheduled task reconciles the counters with the aggregate
+ * queries of {@link CustomerService#getStatistics()}, which also moves
+ * customers to older age groups as years pass.
+ */
+@ApplicationScoped
+public class CustomerStatisticsStore {
+
+    private static final Logger LOGGER = Logger.getLogger(
+            CustomerStatisticsStore.class.getName());
+
+    private static final long RECONCILE_MINUTES = 15;
+
+    private static final int LOAD_CHUNK_SIZE = 10000;
+
+    @PersistenceContext(unitName = "customer-pu")
+    private EntityManager entityManager;
+
+    @Inject
+    CustomerChangeChannel channel;
+
+    @Inject
+    CustomerService service;
+
+    @Resource
+    ManagedScheduledExecutorService executor;
+
+    private ScheduledFuture<?> reconciliation;
+
+    private final ChangedCustomers changes = new ChangedCustomers();
+
+    // serializes loading and updating the counters
+    private final Object updateLock = new Object();
+
+    // the counted values of each customer packed into an int, to undo them
+    // when the customer changes. Guarded by updateLock.
+    private LongIntMap values = new LongIntMap();
+
+    private volatile Counters counters = new Counters();
+
+    private volatile boolean loaded;
+
+    public CustomerStatisticsStore() {
+    }
+
+    /**
+     * Counts the given rows instead of loading them from the database, for
+     * tests.
+     *
+     * @param rows the id, status, gender and birth date of each customer
+     */
+    CustomerStatisticsStore(List<Object[]> rows) {
+        rows.forEach(this::apply);
+        loaded = true;
+    }
+
+    @PostConstruct
+    void init() {
+        channel.subscribe(changes);
+        reconciliation = executor.scheduleWithFixedDelay(this::reconcile,
+                RECONCILE_MINUTES, RECONCILE_MINUTES, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void destroy() {
+        reconciliation.cancel(false);
+    }
+
+    /**
+     * @return the current customer statistics
+     */
+    public CustomerStatistics getStatistics() {
+        ensureCurrent();
+        return counters.toStatistics();
+    }
+
+    /**
+     * Loads the counters or reloads them after bulk changes, then applies
+     * the customers changed since the last query.
+     */
+    private void ensureCurrent() {
+        boolean reload = changes.takeAll();
+        if (!reload && loaded && changes.isEmpty()) {
+            return;
+        }
+        synchronized (updateLock) {
+            if (reload || !loaded) {
+                load();
+            }
+            List<Integer> changed;
+            while (!(changed = changes.take(ChangedCustomers.CHUNK_SIZE))
+                    .isEmpty()) {
+                LongIntMap current = new LongIntMap(changed.size());
+                for (Object[] row : entityManager.createQuery("SELECT c.id, "
+                        + "c.status, c.gender, c.birthDate FROM Customer c "
+                        + "WHERE c.id IN :ids", Object[].class)
+                        .setParameter("ids", changed)
+                        .getResultList()) {
+                    current.put((Integer) row[0], pack(row));
+                }
+                // deleted customers are not found
+                for (Integer id : changed) {
+                    apply(id, current.get(id));
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts all customers in the database into new counters, which replace
+     * the current ones when done. Changes announced while loading are
+     * applied after it.
+     */
+    private void load() {
+        LongIntMap loadedValues = new LongIntMap();
+        Counters loadedCounters = new Counters();
+        int lastId = Integer.MIN_VALUE;
+        List<Object[]> rows;
+        do {
+            rows = entityManager.createQuery("SELECT c.id, c.status, "
+                    + "c.gender, c.birthDate FROM Customer c "
+                    + "WHERE c.id > :lastId ORDER BY c.id", Object[].class)
+                    .setParameter("lastId", lastId)
+                    .setMaxResults(LOAD_CHUNK_SIZE)
+                    .getResultList();
+            for (Object[] row : rows) {
+                lastId = (Integer) row[0];
+                int packed = pack(row);
+                loadedValues.put(lastId, packed);
+                loadedCounters.add(packed, 1);
+            }
+        } while (rows.size() == LOAD_CHUNK_SIZE);
+        values = loadedValues;
+        counters = loadedCounters;
+        loaded = true;
+    }
+
+    /**
+     * Compares the counters with the aggregate queries of the database and
+     * reloads them if they differ, e.g. after the year has changed. Only run
+     * by the reconciliation task. Failures are logged and retried on the
+     * next run, as an exception would cancel the task.
+     */
+    private void reconcile() {
+        if (!loaded) {
+            return;
+        }
+        try {
+            if (!getStatistics().equals(service.getStatistics())) {
+                LOGGER.info("The customer statistics differ from the "
+                        + "database, reloading them");
+                synchronized (updateLock) {
+                    load();
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING,
+                    "Reconciling the customer statistics failed", e);
+        }
+    }
+
+    /**
+     * Counts a customer, replacing its previously counted values.
+     *
+     * @param row the id, status, gender and birth date of the customer
+     */
+    void apply(Object[] row) {
+        apply((Integer) row[0], pack(row));
+    }
+
+    /**
+     * @param packed the packed values of the customer, -1 to no longer
+     * count it
+     */
+    void apply(int id, int packed) {
+        int old = packed < 0 ? values.remove(id) : values.put(id, packed);
+        if (old == packed) {
+            return;
+        }
+        if (old >= 0) {
+            counters.add(old, -1);
+        }
+        if (packed >= 0) {
+            counters.add(packed, 1);
+        }
+    }
+
+    /**
+     * Packs the counted values of a customer into an int, one byte each,
+     * 0 for a missing value.
+     */
+    private static int pack(Object[] row) {
+        CustomerStatus status = (CustomerStatus) row[1];
+        Gender gender = (Gender) row[2];
+        LocalDate birthDate = (LocalDate) row[3];
+        int packed = status == null ? 0 : status.ordinal() + 1;
+        if (gender != null) {
+            packed |= (gender.ordinal() + 1) << 8;
+        }
+        if (birthDate != null) {
+            packed |= (AgeGroup.getAgeGroup(birthDate).ordinal() + 1) << 16;
+        }
+        return packed;
+    }
+
+    private static class Counters {
+
+        final LongAdder[] statuses = adders(CustomerStatus.values().length);
+        // the last gender counter counts the customers without a gender
+        final LongAdder[] genders = adders(Gender.values().length + 1);
+        final LongAdder[][] ageGroups
+                = new LongAdder[AgeGroup.values().length][];
+
+        Counters() {
+            for (int i = 0; i < ageGroups.length; i++) {
+                ageGroups[i] = adders(Gender.values().length + 1);
+            }
+        }
+
+        void add(int packed, int delta) {
+            int status = packed & 0xff;
+            int gender = packed >> 8 & 0xff;
+            int ageGroup = packed >> 16 & 0xff;
+            if (status > 0) {
+                statuses[status - 1].add(delta);
+            }
+            int genderIndex = gender > 0 ? gender - 1 : Gender.values().length;
+            genders[genderIndex].add(delta);
+            if (ageGroup > 0) {
+                ageGroups[ageGroup - 1][genderIndex].add(delta);
+            }
+        }
+
+        CustomerStatistics toStatistics() {
+            int[][] ageGroupCounts = new int[ageGroups.length][];
+            for (int i = 0; i < ageGroups.length; i++) {
+                ageGroupCounts[i] = sums(ageGroups[i]);
+            }
+            return new CustomerStatistics(sums(statuses), sums(genders),
+                    ageGroupCounts);
+        }
+
+        private static LongAdder[] adders(int count) {
+            LongAdder[] adders = new LongAdder[count];
+            for (int i = 0; i < count; i++) {
+                adders[i] = new LongAdder();
+            }
+            return adders;
+        }
+
+        private static int[] sums(LongAdder[] adders) {
+            int[] sums = new int[adders.length];
+            for (int i = 0; i < adders.length; i++) {
+                sums[i] = adders[i].intValue();
+            }
+            return sums;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Splits a computation over a range of indexes into one part per processor
+ * and runs the parts on an executor, the managed executor of the container
+ * in production. The calling thread runs every part that no pooled thread
+ * has started yet, so the result never waits for a task queued behind the
+ * caller, even when the caller is a thread of the same pool.
+ */
+final class ParallelParts {
+
+    /**
+     * Computes the result of the indexes from, inclusive, to to, exclusive.
+     *
+     * @param <T> the type of the result
+     */
+    interface Part<T> {
+
+        T compute(int from, int to);
+    }
+
+    private ParallelParts() {
+    }
+
+    /**
+     * @param executor the executor running the parts
+     * @param size the number of indexes to split
+     * @param minPartSize the fewest indexes worth a part of their own
+     * @param part computes the result of one part
+     * @param <T> the type of the results
+     * @return the results of the parts, in index order
+     */
+    static <T> List<T> compute(Executor executor, int size, int minPartSize,
+            Part<T> part) {
+        int parts = Math.max(1, Math.min(
+                Runtime.getRuntime().availableProcessors(),
+                size / minPartSize));
+        List<Task<T>> tasks = new ArrayList<>(parts);
+        for (int i = 0; i < parts; i++) {
+            tasks.add(new Task<>(part, (int) ((long) size * i / parts),
+                    (int) ((long) size * (i + 1) / parts)));
+        }
+        for (Task<T> task : tasks.subList(1, parts)) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // run by the calling thread below
+            }
+        }
+        for (Task<T> task : tasks) {
+            task.run();
+        }
+        List<T> results = new ArrayList<>(parts);
+        for (Task<T> task : tasks) {
+            try {
+                results.add(task.result.join());
+            } catch (CompletionException e) {
+                // fail like the part did
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Runs a part once, by whichever thread gets to it first.
+     */
+    private static class Task<T> implements Runnable {
+
+        private final Part<T> part;
+        private final int from;
+        private final int to;
+        private final AtomicBoolean started = new AtomicBoolean();
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Task(Part<T> part, int from, int to) {
+            this.part = part;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                result.complete(part.compute(from, to));
+            } catch (RuntimeException | Error e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+}
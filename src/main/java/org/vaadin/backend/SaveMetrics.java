@@ -0,0 +1,127 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how often saving an edited customer runs into concurrent edits and
+ * how those are resolved, see {@link CustomerService#save(Customer,
+ * Customer)}.
+ */
+@ApplicationScoped
+public class SaveMetrics {
+
+    private final LongAdder saves = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder merges = new LongAdder();
+    private final LongAdder unresolved = new LongAdder();
+
+    void saved() {
+        saves.increment();
+    }
+
+    void conflict() {
+        conflicts.increment();
+    }
+
+    void merged() {
+        merges.increment();
+    }
+
+    void unresolved() {
+        unresolved.increment();
+    }
+
+    /**
+     * @return a snapshot of the metrics
+     */
+    public Statistics getStatistics() {
+        return new Statistics(saves.sum(), conflicts.sum(), merges.sum(),
+                unresolved.sum());
+    }
+
+    public static class Statistics {
+
+        private final long saves;
+        private final long conflicts;
+        private final long merges;
+        private final long unresolved;
+
+        Statistics(long saves, long conflicts, long merges, long unresolved) {
+            this.saves = saves;
+            this.conflicts = conflicts;
+            this.merges = merges;
+            this.unresolved = unresolved;
+        }
+
+        /**
+         * @return the number of successful saves
+         */
+        public long getSaves() {
+            return saves;
+        }
+
+        /**
+         * @return the number of save attempts that failed on the version
+         * check
+         */
+        public long getConflicts() {
+            return conflicts;
+        }
+
+        /**
+         * @return the number of conflicts merged automatically and retried
+         */
+        public long getMerges() {
+            return merges;
+        }
+
+        /**
+         * @return the number of conflicts reported to the user
+         */
+        public long getUnresolved() {
+            return unresolved;
+        }
+
+        /**
+         * @return the share of save attempts that ran into a conflict
+         */
+        public double getConflictRate() {
+            // each conflict is a failed attempt
+            long attempts = saves + conflicts;
+            return attempts == 0 ? 0 : (double) conflicts / attempts;
+        }
+
+        @Override
+        public String toString() {
+            return "saves=" + saves + ", conflicts=" + conflicts
+                    + ", merges=" + merges + ", unresolved=" + unresolved;
+        }
+    }
+}
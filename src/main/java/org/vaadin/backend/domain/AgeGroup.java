@@ -0,0 +1,72 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend.domain;
+
+import java.time.LocalDate;
+
+/**
+ * The age groups used in the customer analysis. The age is counted in whole
+ * years from the year of birth.
+ */
+public enum AgeGroup {
+
+    Children(0, 15), Young(15, 30), MiddleAged(30, 60), Old(60, 100);
+
+    private final int min;
+    private final int max;
+
+    AgeGroup(int min, int max) {
+        this.min = min;
+        this.max = max;
+    }
+
+    public int getMin() {
+        return min;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * @param year the current year
+     * @return the first birth date in this group, null for the oldest group
+     */
+    public LocalDate getBornFrom(int year) {
+        return this == Old ? null : LocalDate.of(year - max, 1, 1);
+    }
+
+    public static AgeGroup getAgeGroup(LocalDate birthDate) {
+        int age = LocalDate.now().getYear() - birthDate.getYear();
+        for (AgeGroup g : AgeGroup.values()) {
+            if (age <= g.max) {
+                return g;
+            }
+        }
+        return Old;
+    }
+}
@@ -26,6 +26,8 @@
  */
 package org.vaadin.backend.domain;
 
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Point;
 
 import javax.persistence.*;
@@ -40,14 +42,49 @@ import java.time.LocalDate;
 @NamedQueries({
         @NamedQuery(name="Customer.findAll",
                 query="SELECT c FROM Customer c"),
-        @NamedQuery(name="Customer.findByName",
-                query="SELECT c FROM Customer c WHERE LOWER(c.firstName) LIKE :filter OR LOWER(c.lastName) LIKE :filter"),
+        @NamedQuery(name="Customer.count",
+                query="SELECT COUNT(c) FROM Customer c"),
+        @NamedQuery(name="Customer.findIds",
+                query="SELECT c.id FROM Customer c"),
+        @NamedQuery(name="Customer.findSummariesByIds",
+                query="SELECT NEW org.vaadin.backend.domain.CustomerSummary(c.id, c.firstName, c.lastName, c.email, c.status) FROM Customer c WHERE c.id IN :ids"),
+        @NamedQuery(name="Customer.findLocationBounds",
+                query="SELECT MIN(c.latitude), MIN(c.longitude), MAX(c.latitude), MAX(c.longitude) FROM Customer c"),
+        @NamedQuery(name="Customer.countByStatus",
+                query="SELECT c.status, COUNT(c) FROM Customer c GROUP BY c.status"),
+        @NamedQuery(name="Customer.countByGender",
+                query="SELECT c.gender, COUNT(c) FROM Customer c GROUP BY c.gender"),
 })
 @Entity
+@Cacheable
+/*
+ * The listing is sorted by one column and the id, which the keyset paging of
+ * CustomerService seeks in, so the sortable columns are indexed with the id.
+ * H2 only reads an index forwards, so the columns paged by key also have a
+ * descending index.
+ */
+@Table(indexes = {
+        @Index(name = "CUSTOMER_FIRSTNAME_IDX", columnList = "firstName, id"),
+        @Index(name = "CUSTOMER_FIRSTNAME_DESC_IDX", columnList = "firstName DESC, id DESC"),
+        @Index(name = "CUSTOMER_LASTNAME_IDX", columnList = "lastName, id"),
+        @Index(name = "CUSTOMER_LASTNAME_DESC_IDX", columnList = "lastName DESC, id DESC"),
+        @Index(name = "CUSTOMER_EMAIL_IDX", columnList = "email, id"),
+        @Index(name = "CUSTOMER_EMAIL_DESC_IDX", columnList = "email DESC, id DESC"),
+        @Index(name = "CUSTOMER_STATUS_IDX", columnList = "status, id"),
+        @Index(name = "CUSTOMER_STATUS_DESC_IDX", columnList = "status DESC, id DESC"),
+        @Index(name = "CUSTOMER_BIRTHDATE_IDX", columnList = "birthDate, id")
+})
 public class Customer implements Serializable {
 
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+    /*
+     * Ids are allocated from a table in blocks, so inserting a batch of
+     * customers doesn't need a round trip per id.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "CUSTOMER_ID")
+    @TableGenerator(name = "CUSTOMER_ID", allocationSize = 1000)
     private int id;
 
     @Version int version;
@@ -66,8 +103,13 @@ public class Customer implements Serializable {
     @Pattern(regexp = ".+@.+\\.[a-z]+", message = "Must be valid email")
     private String email;
 
-    @Lob
-    private Point location;
+    /*
+     * The location is stored as two plain columns instead of a serialized
+     * Point, so reading it is cheap and it can be used in queries.
+     */
+    private Double latitude;
+
+    private Double longitude;
 
     public int getId() {
         return id;
@@ -175,15 +217,68 @@ public class Customer implements Serializable {
         this.gender = gender;
     }
 
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(Double latitude) {
+        this.latitude = latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(Double longitude) {
+        this.longitude = longitude;
+    }
+
+    /**
+     * @param location the location, x being the longitude and y the latitude
+     */
     public void setLocation(Point location) {
-        this.location = location;
+        this.latitude = location == null ? null : location.getY();
+        this.longitude = location == null ? null : location.getX();
     }
 
+    /**
+     * @return the location as a new Point, or null if not set
+     */
     public Point getLocation() {
-        return location;
+        if (latitude == null || longitude == null) {
+            return null;
+        }
+        return GEOMETRY_FACTORY.createPoint(new Coordinate(longitude, latitude));
     }
 
     public boolean isPersisted() {
         return id > 0;
     }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    /**
+     * @return a detached copy of this customer, e.g. to remember the values
+     * an edit started from
+     */
+    public Customer copy() {
+        Customer copy = new Customer();
+        copy.id = id;
+        copy.version = version;
+        copy.firstName = firstName;
+        copy.lastName = lastName;
+        copy.birthDate = birthDate;
+        copy.status = status;
+        copy.gender = gender;
+        copy.email = email;
+        copy.latitude = latitude;
+        copy.longitude = longitude;
+        return copy;
+    }
 }
@@ -0,0 +1,99 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend.domain;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Customer counts by status, gender and age group, computed for the
+ * analysis view.
+ */
+public class CustomerStatistics implements Serializable {
+
+    private final int[] statusCounts;
+    private final int[] genderCounts;
+    private final int[][] ageGroupCounts;
+
+    /**
+     * @param statusCounts the counts indexed by CustomerStatus ordinal
+     * @param genderCounts the counts indexed by Gender ordinal, followed by
+     * the count of customers without a gender
+     * @param ageGroupCounts the counts indexed by AgeGroup and Gender
+     * ordinals, each followed by the count of customers without a gender
+     */
+    public CustomerStatistics(int[] statusCounts, int[] genderCounts,
+            int[][] ageGroupCounts) {
+        this.statusCounts = statusCounts;
+        this.genderCounts = genderCounts;
+        this.ageGroupCounts = ageGroupCounts;
+    }
+
+    public int getCount(CustomerStatus status) {
+        return statusCounts[status.ordinal()];
+    }
+
+    public int getCount(Gender gender) {
+        return genderCounts[gender.ordinal()];
+    }
+
+    public int getCount(AgeGroup ageGroup, Gender gender) {
+        return ageGroupCounts[ageGroup.ordinal()][gender.ordinal()];
+    }
+
+    /**
+     * @return the number of customers without a gender
+     */
+    public int getUnknownGenderCount() {
+        return genderCounts[Gender.values().length];
+    }
+
+    /**
+     * @param ageGroup the age group
+     * @return the number of customers in the age group without a gender
+     */
+    public int getUnknownGenderCount(AgeGroup ageGroup) {
+        return ageGroupCounts[ageGroup.ordinal()][Gender.values().length];
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof CustomerStatistics)) {
+            return false;
+        }
+        CustomerStatistics other = (CustomerStatistics) obj;
+        return Arrays.equals(statusCounts, other.statusCounts)
+                && Arrays.equals(genderCounts, other.genderCounts)
+                && Arrays.deepEquals(ageGroupCounts, other.ageGroupCounts);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.deepHashCode(ageGroupCounts) * 31
+                + Arrays.hashCode(genderCounts);
+    }
+}
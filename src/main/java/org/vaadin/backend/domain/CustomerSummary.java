@@ -0,0 +1,93 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend.domain;
+
+import java.io.Serializable;
+
+/**
+ * A read-only projection of the Customer columns shown in the customer
+ * listing. Created with a constructor expression, so no managed entities
+ * are created for the listing.
+ */
+public class CustomerSummary implements Serializable {
+
+    private final int id;
+    private final String firstName;
+    private final String lastName;
+    private final String email;
+    private final CustomerStatus status;
+
+    public CustomerSummary(int id, String firstName, String lastName,
+            String email, CustomerStatus status) {
+        this.id = id;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+        this.status = status;
+    }
+
+    /**
+     * @param customer the customer entity
+     * @return a summary of the current values of the customer
+     */
+    public static CustomerSummary of(Customer customer) {
+        return new CustomerSummary(customer.getId(), customer.getFirstName(),
+                customer.getLastName(), customer.getEmail(),
+                customer.getStatus());
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public CustomerStatus getStatus() {
+        return status;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof CustomerSummary
+                && ((CustomerSummary) obj).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
+    }
+}
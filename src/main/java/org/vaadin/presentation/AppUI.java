@@ -26,6 +26,7 @@
  */
 package org.vaadin.presentation;
 
+import com.vaadin.annotations.Push;
 import com.vaadin.annotations.Title;
 import com.vaadin.cdi.CDIUI;
 import com.vaadin.ui.UI;
@@ -44,8 +45,13 @@ import org.vaadin.cdiviewmenu.ViewMenuUI;
  * <p>
  * The real meat of this example is in CustomerView and CustomerForm classes.
  * </p>
+ * <p>
+ * Server push is enabled, so that results of queries executed in background
+ * threads are delivered to the browser as soon as they are available.
+ * </p>
  */
 @CDIUI("")
+@Push
 @Title("Simple CRM")
 public class AppUI extends ViewMenuUI {
 
@@ -0,0 +1,82 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.presentation;
+
+import com.vaadin.ui.Notification;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.UIDetachedException;
+
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.context.Dependent;
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs slow backend calls in a container managed thread instead of the
+ * request thread that holds the session lock. The result is handed to the
+ * view with UI.access and pushed to the browser, so views can render their
+ * layout immediately and fill in the data when it is ready.
+ */
+@Dependent
+public class AsyncLoader implements Serializable {
+
+    @Resource
+    ManagedExecutorService executor;
+
+    /**
+     * Executes the query in a background thread and passes the result to
+     * the consumer in the UI thread of the current UI.
+     *
+     * @param query the backend call
+     * @param onLoad the consumer of the result, called while holding the
+     * session lock
+     * @param <T> the type of the result
+     * @return a future completed after the result has been handed to the UI
+     */
+    public <T> CompletableFuture<Void> load(Supplier<T> query,
+            Consumer<T> onLoad) {
+        final UI ui = UI.getCurrent();
+        return CompletableFuture.supplyAsync(query, executor)
+                .thenAccept(result -> access(ui, () -> onLoad.accept(result)))
+                .exceptionally(e -> {
+                    access(ui, () -> Notification.show("Loading data failed",
+                            Notification.Type.ERROR_MESSAGE));
+                    return null;
+                });
+    }
+
+    private static void access(UI ui, Runnable command) {
+        try {
+            ui.access(command::run);
+        } catch (UIDetachedException e) {
+            // the user has already left, nobody is interested in the result
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.presentation;
+
+import org.vaadin.backend.CustomerChange;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The changes waiting to be delivered to one listener of the
+ * {@link CustomerChangeBroadcaster}, coalesced to one change per customer.
+ * A later save doesn't hide that the customer was created or deleted, as
+ * the listener must then refresh its rows instead of a single one. Not
+ * thread safe.
+ */
+class ChangeQueue {
+
+    private final int capacity;
+
+    private final Map<Integer, CustomerChange> changes = new LinkedHashMap<>();
+
+    private boolean all;
+
+    /**
+     * @param capacity the maximum number of distinct customers queued, more
+     * collapse the queue to a single {@link CustomerChange.Kind#ALL}
+     */
+    ChangeQueue(int capacity) {
+        this.capacity = capacity;
+    }
+
+    void add(CustomerChange change) {
+        if (all) {
+            return;
+        }
+        int id = change.getCustomerId();
+        if (change.getKind() == CustomerChange.Kind.ALL
+                || changes.size() >= capacity && !changes.containsKey(id)) {
+            all = true;
+            changes.clear();
+            return;
+        }
+        CustomerChange queued = changes.get(id);
+        if (queued == null || change.getKind() != CustomerChange.Kind.SAVE
+                || queued.getKind() == CustomerChange.Kind.SAVE) {
+            changes.put(id, change);
+        }
+    }
+
+    /**
+     * @return the queued changes, in the order the customers first changed
+     */
+    List<CustomerChange> getChanges() {
+        return all ? Collections.singletonList(CustomerChange.all())
+                : new ArrayList<>(changes.values());
+    }
+}
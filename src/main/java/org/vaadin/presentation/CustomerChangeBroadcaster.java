@@ -0,0 +1,131 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.presentation;
+
+import com.vaadin.shared.Registration;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.UIDetachedException;
+import org.vaadin.backend.CustomerChange;
+import org.vaadin.backend.CustomerChangeChannel;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Pushes customer changes made in any session, or on any node through the
+ * {@link CustomerChangeChannel}, to the open UIs that have registered a
+ * listener.
+ * <p>
+ * Changes are queued per listener and delivered with UI.access, so a slow
+ * UI never blocks the one making the change. While a delivery is pending,
+ * further changes are coalesced into it by a {@link ChangeQueue}.
+ * </p>
+ */
+@ApplicationScoped
+public class CustomerChangeBroadcaster {
+
+    /**
+     * The maximum number of distinct customers queued for a listener.
+     */
+    static final int MAX_QUEUED = 100;
+
+    @Inject
+    CustomerChangeChannel channel;
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    @PostConstruct
+    void init() {
+        channel.subscribe(this::broadcast);
+    }
+
+    /**
+     * @param ui the UI the listener is called in
+     * @param listener receives the coalesced changes, in the UI thread
+     * @return the registration for removing the listener, e.g. on detach
+     */
+    public Registration register(UI ui,
+            Consumer<List<CustomerChange>> listener) {
+        Listener l = new Listener(ui, listener);
+        listeners.add(l);
+        return () -> listeners.remove(l);
+    }
+
+    private void broadcast(CustomerChange change) {
+        for (Listener listener : listeners) {
+            listener.enqueue(change);
+        }
+    }
+
+    private class Listener {
+
+        private final UI ui;
+        private final Consumer<List<CustomerChange>> consumer;
+        // guarded by this, null when no delivery is pending
+        private ChangeQueue queue;
+
+        Listener(UI ui, Consumer<List<CustomerChange>> consumer) {
+            this.ui = ui;
+            this.consumer = consumer;
+        }
+
+        void enqueue(CustomerChange change) {
+            synchronized (this) {
+                boolean pending = queue != null;
+                if (!pending) {
+                    queue = new ChangeQueue(MAX_QUEUED);
+                }
+                queue.add(change);
+                if (pending) {
+                    return;
+                }
+            }
+            try {
+                ui.access(this::deliver);
+            } catch (UIDetachedException e) {
+                listeners.remove(this);
+            }
+        }
+
+        private void deliver() {
+            List<CustomerChange> changes;
+            synchronized (this) {
+                changes = queue == null ? Collections.emptyList()
+                        : queue.getChanges();
+                queue = null;
+            }
+            if (!changes.isEmpty()) {
+                consumer.accept(changes);
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.presentation;
+
+import org.vaadin.backend.CustomerService;
+import org.vaadin.backend.domain.Customer;
+
+import javax.inject.Inject;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports all customers as CSV, from /export/customers.csv, or as JSON, from
+ * /export/customers.json. The customers are written to the response as they
+ * are read from the database, so memory use stays the same regardless of the
+ * number of customers. The response is gzipped if the client accepts it.
+ */
+@WebServlet(urlPatterns = "/export/*")
+public class CustomerExportServlet extends HttpServlet {
+
+    private static final String[] CSV_HEADER = {"id", "firstName",
+        "lastName", "email", "status", "gender", "birthDate", "latitude",
+        "longitude"};
+
+    @Inject
+    CustomerService service;
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+            throws ServletException, IOException {
+        String path = req.getPathInfo();
+        boolean json;
+        if ("/customers.csv".equals(path)) {
+            json = false;
+            resp.setContentType("text/csv");
+        } else if ("/customers.json".equals(path)) {
+            json = true;
+            resp.setContentType("application/json");
+        } else {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Content-Disposition", "attachment; filename=\""
+                + path.substring(1) + "\"");
+        // the encoding depends on the request, caches must not mix them up
+        resp.setHeader("Vary", "Accept-Encoding");
+
+        OutputStream out = resp.getOutputStream();
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            resp.setHeader("Content-Encoding", "gzip");
+            out = new GZIPOutputStream(out, 8192);
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(out,
+                StandardCharsets.UTF_8), 65536)) {
+            if (json) {
+                writeJson(writer);
+            } else {
+                writeCsv(writer);
+            }
+        } catch (UncheckedIOException e) {
+            // most likely the client went away
+            throw e.getCause();
+        }
+    }
+
+    private void writeCsv(Writer writer) throws IOException {
+        writer.write(String.join(",", CSV_HEADER));
+        writer.write("\r\n");
+        service.forEach(c -> {
+            try {
+                writer.write(Integer.toString(c.getId()));
+                for (Object value : values(c)) {
+                    writer.write(',');
+                    writer.write(csv(value));
+                }
+                writer.write("\r\n");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void writeJson(Writer writer) throws IOException {
+        writer.write('[');
+        boolean[] first = {true};
+        service.forEach(c -> {
+            try {
+                writer.write(first[0] ? "\n{" : ",\n{");
+                first[0] = false;
+                writer.write("\"id\":");
+                writer.write(Integer.toString(c.getId()));
+                Object[] values = values(c);
+                for (int i = 0; i < values.length; i++) {
+                    writer.write(",\"");
+                    writer.write(CSV_HEADER[i + 1]);
+                    writer.write("\":");
+                    writer.write(json(values[i]));
+                }
+                writer.write('}');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.write("\n]\n");
+    }
+
+    /**
+     * @return the exported values after the id, in {@link #CSV_HEADER} order
+     */
+    private static Object[] values(Customer c) {
+        return new Object[]{c.getFirstName(), c.getLastName(), c.getEmail(),
+            c.getStatus(), c.getGender(), c.getBirthDate(), c.getLatitude(),
+            c.getLongitude()};
+    }
+
+    private static String csv(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String s = value.toString();
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0
+                && s.indexOf('\r') < 0) {
+            return s;
+        }
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+
+    private static String json(Object value) {
+        if (value == null) {
+            return "null";
+        }
+        if (value instanceof Number) {
+            return value.toString();
+        }
+        String s = value.toString();
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                sb.append('\\').append(ch);
+            } else if (ch < 0x20) {
+                sb.append(String.format("\\u%04x", (int) ch));
+            } else {
+                sb.append(ch);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -26,13 +26,22 @@
  */
 package org.vaadin.presentation.views;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 
+import org.vaadin.backend.CustomerGenerator;
 import org.vaadin.backend.CustomerService;
+import org.vaadin.backend.QueryResultCache;
+import org.vaadin.backend.SaveMetrics;
 import org.vaadin.cdiviewmenu.ViewMenuItem;
 import org.vaadin.cdiviewmenu.ViewMenuUI;
+import org.vaadin.presentation.AsyncLoader;
 import org.vaadin.viritin.label.RichText;
+import org.vaadin.viritin.layouts.MHorizontalLayout;
 import org.vaadin.viritin.layouts.MVerticalLayout;
 
 import com.vaadin.cdi.CDIView;
@@ -41,26 +50,51 @@ import com.vaadin.navigator.ViewChangeListener;
 import com.vaadin.server.FontAwesome;
 import com.vaadin.shared.ui.MarginInfo;
 import com.vaadin.ui.Button;
+import com.vaadin.ui.ComboBox;
 import com.vaadin.ui.Label;
+import com.vaadin.ui.Notification;
+import com.vaadin.ui.UI;
 import com.vaadin.ui.themes.ValoTheme;
 
 /*
  * A very simple view that just displays an "about text". The view also has 
- * a button to reset the demo date in the database.
+ * a button to reset the demo date in the database and an option to generate
+ * large data sets for load testing.
  */
 @CDIView("")
 @ViewMenuItem(icon = FontAwesome.INFO)
 public class AboutView extends MVerticalLayout implements View {
 
+    /**
+     * A rough estimate of the heap used per customer by the in-memory search
+     * index, map clusters, spatial index and analysis snapshot.
+     */
+    private static final long BYTES_PER_CUSTOMER = 1024;
+
     @Inject
     CustomerService service;
 
+    @Inject
+    AsyncLoader loader;
+
+    @Inject
+    QueryResultCache queryCache;
+
+    @Inject
+    SaveMetrics saveMetrics;
+
+    private final Label records = new Label();
+
+    private final Label cacheStatistics = new Label();
+
+    private final Label saveStatistics = new Label();
+
     @PostConstruct
     void init() {
         add(new RichText().withMarkDownResource("/about.md"));
 
-        int records = service.findAll().size();
-        add(new Label("There are " + records + " records in the DB."));
+        add(records);
+        showCount();
 
         Button button = new Button("Fill test data into DB", e -> {
             service.resetTestData();
@@ -70,11 +104,78 @@ public class AboutView extends MVerticalLayout implements View {
         button.addStyleName(ValoTheme.BUTTON_PRIMARY);
         add(button);
 
+        // only offer what the in-memory structures of this JVM can hold
+        long maxCustomers = maxCustomers();
+        List<Integer> counts = Arrays.asList(10000, 100000, 1000000, 10000000)
+                .stream().filter(count -> count == 10000
+                        || count <= maxCustomers)
+                .collect(Collectors.toList());
+        ComboBox<Integer> generateCount = new ComboBox<>(null, counts);
+        generateCount.setItemCaptionGenerator(
+                count -> String.format("%,d customers", count));
+        generateCount.setEmptySelectionAllowed(false);
+        generateCount.setValue(counts.get(Math.min(1, counts.size() - 1)));
+        Button generate = new Button("Generate", FontAwesome.DATABASE);
+        generate.addClickListener(e -> {
+            int count = generateCount.getValue();
+            if (service.count() + (long) count > maxCustomers) {
+                Notification.show(String.format("At most %,d customers fit "
+                        + "in the memory of this server", maxCustomers),
+                        Notification.Type.WARNING_MESSAGE);
+                return;
+            }
+            generate.setEnabled(false);
+            records.setValue("Generating " + count + " customers...");
+            final UI ui = UI.getCurrent();
+            // runs in the background, the view stays responsive
+            loader.load(() -> service.insertAll(new CustomerGenerator()
+                    .withCount(count), CustomerService.DEFAULT_BATCH_SIZE),
+                    inserted -> Notification.show(
+                            inserted + " customers generated",
+                            Notification.Type.TRAY_NOTIFICATION))
+                    .thenRun(() -> ui.access(() -> {
+                        // also after a failed generation
+                        generate.setEnabled(true);
+                        showCount();
+                    }));
+        });
+        add(new MHorizontalLayout(generateCount, generate));
+
+        add(cacheStatistics, saveStatistics);
+        showStatistics();
+
         setMargin(new MarginInfo(false, true, true, true));
         setStyleName(ValoTheme.LAYOUT_CARD);
     }
 
+    /**
+     * @return the number of customers that fit in half of the maximum heap
+     */
+    private static long maxCustomers() {
+        return Runtime.getRuntime().maxMemory() / 2 / BYTES_PER_CUSTOMER;
+    }
+
+    private void showCount() {
+        records.setValue("Counting records in the DB...");
+        loader.load(service::count, count -> records.setValue(
+                "There are " + count + " records in the DB."));
+    }
+
+    /**
+     * Shows the counters of this server node, updated when the view is
+     * entered.
+     */
+    private void showStatistics() {
+        QueryResultCache.Statistics cache = queryCache.getStatistics();
+        cacheStatistics.setValue("Query cache: " + cache);
+        SaveMetrics.Statistics saves = saveMetrics.getStatistics();
+        saveStatistics.setValue(String.format(
+                "Customer saves: %s, conflict rate %.1f%%", saves,
+                saves.getConflictRate() * 100));
+    }
+
     @Override
     public void enter(ViewChangeListener.ViewChangeEvent viewChangeEvent) {
+        showStatistics();
     }
 }
@@ -26,15 +26,18 @@
  */
 package org.vaadin.presentation.views;
 
-import java.util.List;
-
 import javax.inject.Inject;
 
-import org.vaadin.backend.CustomerService;
-import org.vaadin.backend.domain.Customer;
+import org.vaadin.backend.CustomerSnapshot;
+import org.vaadin.backend.CustomerSnapshot.Dimension;
+import org.vaadin.backend.CustomerSnapshotStore;
+import org.vaadin.backend.CustomerStatisticsStore;
+import org.vaadin.backend.domain.AgeGroup;
+import org.vaadin.backend.domain.CustomerStatistics;
 import org.vaadin.backend.domain.CustomerStatus;
 import org.vaadin.backend.domain.Gender;
 import org.vaadin.cdiviewmenu.ViewMenuItem;
+import org.vaadin.presentation.AsyncLoader;
 import org.vaadin.presentation.ScreenSize;
 import org.vaadin.viritin.label.Header;
 import org.vaadin.viritin.layouts.MHorizontalLayout;
@@ -61,8 +64,11 @@ import com.vaadin.navigator.View;
 import com.vaadin.navigator.ViewChangeListener;
 import com.vaadin.server.FontAwesome;
 import com.vaadin.ui.Component;
+import com.vaadin.ui.Grid;
 import com.vaadin.ui.Panel;
-import java.time.LocalDate;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 import org.vaadin.viritin.label.RichText;
 
 /**
@@ -74,45 +80,176 @@ import org.vaadin.viritin.label.RichText;
 public class AnalyzeView extends MVerticalLayout implements View {
 
     @Inject
-    CustomerService service;
+    CustomerStatisticsStore statistics;
+
+    @Inject
+    CustomerSnapshotStore snapshots;
+
+    @Inject
+    AsyncLoader loader;
 
     @Override
     public void enter(ViewChangeListener.ViewChangeEvent viewChangeEvent) {
         removeAllComponents();
         showChartsInfo();
 //        renderCharts();
+        renderSummary();
+        renderCrossTab();
     }
 
     private void showChartsInfo() {
         addComponent(new RichText().withMarkDownResource("/charts.md"));
     }
 
+    /**
+     * Shows the sales funnel and the gender split from the in-memory
+     * statistics.
+     */
+    protected void renderSummary() {
+        add(new Header("Customers by status and gender").setHeaderLevel(3));
+        Grid<SummaryRow> summary = new Grid<>();
+        summary.addColumn(SummaryRow::getName).setCaption("Customers");
+        summary.addColumn(SummaryRow::getCount).setCaption("Count");
+        summary.setWidth("100%");
+        summary.setHeightByRows(CustomerStatus.values().length
+                + Gender.values().length + 1);
+        add(summary);
+        loader.load(this.statistics::getStatistics,
+                statistics -> summary.setItems(summaryRows(statistics)));
+    }
+
+    private static List<SummaryRow> summaryRows(CustomerStatistics statistics) {
+        List<SummaryRow> rows = new ArrayList<>();
+        for (CustomerStatus status : CustomerStatus.values()) {
+            rows.add(new SummaryRow(status.name(), statistics.getCount(status)));
+        }
+        for (Gender gender : Gender.values()) {
+            rows.add(new SummaryRow(gender.name(), statistics.getCount(gender)));
+        }
+        rows.add(new SummaryRow("Unknown gender",
+                statistics.getUnknownGenderCount()));
+        return rows;
+    }
+
+    private static class SummaryRow implements Serializable {
+
+        private final String name;
+        private final int count;
+
+        SummaryRow(String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        int getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Shows the customers by status, gender and age group, aggregated from
+     * the in-memory snapshot.
+     */
+    protected void renderCrossTab() {
+        add(new Header("Customers by status, gender and age").setHeaderLevel(3));
+        Grid<CrossTabRow> crossTab = new Grid<>();
+        crossTab.addColumn(CrossTabRow::getStatus).setCaption("Status");
+        crossTab.addColumn(CrossTabRow::getGender).setCaption("Gender");
+        for (AgeGroup g : AgeGroup.values()) {
+            final int bucket = g.ordinal();
+            crossTab.addColumn(row -> row.getCount(bucket)).setCaption(
+                    String.format("%s-%s", g.getMin(), g.getMax()));
+        }
+        crossTab.addColumn(row -> row.getCount(AgeGroup.values().length)).
+                setCaption("Unknown");
+        crossTab.addColumn(CrossTabRow::getTotal).setCaption("Total");
+        crossTab.setWidth("100%");
+        add(crossTab);
+        loader.load(() -> snapshots.getSnapshot().histogram(
+                Dimension.STATUS, Dimension.GENDER, Dimension.AGE_GROUP),
+                histogram -> crossTab.setItems(crossTabRows(histogram)));
+    }
+
+    private static List<CrossTabRow> crossTabRows(
+            CustomerSnapshot.Histogram histogram) {
+        List<CrossTabRow> rows = new ArrayList<>();
+        for (int status = 0; status < Dimension.STATUS.getBuckets(); status++) {
+            for (int gender = 0; gender < Dimension.GENDER.getBuckets(); gender++) {
+                int[] counts = new int[Dimension.AGE_GROUP.getBuckets()];
+                int total = 0;
+                for (int age = 0; age < counts.length; age++) {
+                    counts[age] = histogram.getCount(status, gender, age);
+                    total += counts[age];
+                }
+                if (total > 0) {
+                    rows.add(new CrossTabRow(
+                            status < CustomerStatus.values().length
+                            ? CustomerStatus.values()[status].name() : "Unknown",
+                            gender < Gender.values().length
+                            ? Gender.values()[gender].name() : "Unknown",
+                            counts, total));
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static class CrossTabRow implements Serializable {
+
+        private final String status;
+        private final String gender;
+        private final int[] counts;
+        private final int total;
+
+        CrossTabRow(String status, String gender, int[] counts, int total) {
+            this.status = status;
+            this.gender = gender;
+            this.counts = counts;
+            this.total = total;
+        }
+
+        String getStatus() {
+            return status;
+        }
+
+        String getGender() {
+            return gender;
+        }
+
+        int getCount(int ageBucket) {
+            return counts[ageBucket];
+        }
+
+        int getTotal() {
+            return total;
+        }
+    }
+
 //    protected void renderCharts() {
 //
 //        setMargin(new MMarginInfo(false, true));
 //        add(new Header("Customer analysis").setHeaderLevel(2));
 //
-//        List<Customer> customerData = service.findAll();
-//        add(ageDistribution(customerData));
-//        final Component funnel = createStatusFunnel(customerData);
-//        final Component gender = genderDistribution(customerData);
-//        if (ScreenSize.getScreenSize() == ScreenSize.SMALL) {
-//            addComponents(funnel, gender);
-//        } else {
-//            addComponent(new MHorizontalLayout(funnel, gender).withFullWidth());
-//        }
-//    }
-//
-//    private Component genderDistribution(List<Customer> customerData) {
-//        int women = 0, men = 0;
-//        for (Customer c : customerData) {
-//            if (c.getGender() == Gender.Female) {
-//                women++;
+//        // the header is shown right away, charts once the data is loaded
+//        final boolean small = ScreenSize.getScreenSize() == ScreenSize.SMALL;
+//        // the counts are kept in memory, counted from the snapshot
+//        loader.load(this.statistics::getStatistics, statistics -> {
+//            add(ageDistribution(statistics));
+//            final Component funnel = createStatusFunnel(statistics);
+//            final Component gender = genderDistribution(statistics);
+//            if (small) {
+//                addComponents(funnel, gender);
 //            } else {
-//                men++;
+//                addComponent(new MHorizontalLayout(funnel, gender).withFullWidth());
 //            }
-//        }
+//        });
+//    }
 //
+//    private Component genderDistribution(CustomerStatistics statistics) {
 //        Chart chart = getBasicChart(ChartType.PIE);
 //
 //        Configuration conf = chart.getConfiguration();
@@ -125,8 +262,12 @@ public class AnalyzeView extends MVerticalLayout implements View {
 //        conf.setPlotOptions(plotOptions);
 //
 //        final DataSeries series = new DataSeries();
-//        series.add(new DataSeriesItem("Men", men));
-//        series.add(new DataSeriesItem("Women", women));
+//        series.add(new DataSeriesItem("Men",
+//                statistics.getCount(Gender.Male)));
+//        series.add(new DataSeriesItem("Women",
+//                statistics.getCount(Gender.Female)));
+//        series.add(new DataSeriesItem("Unknown",
+//                statistics.getUnknownGenderCount()));
 //        conf.setSeries(series);
 //        return wrapInPanel(chart, "Gender");
 //    }
@@ -138,29 +279,6 @@ public class AnalyzeView extends MVerticalLayout implements View {
 //        return panel;
 //    }
 //
-//    private enum AgeGroup {
-//
-//        Children(0, 15), Young(15, 30), MiddleAged(30, 60), Old(60, 100);
-//
-//        private final int min;
-//        private final int max;
-//
-//        AgeGroup(int min, int max) {
-//            this.min = min;
-//            this.max = max;
-//        }
-//
-//        public static AgeGroup getAgeGroup(LocalDate birthDate) {
-//            int age = LocalDate.now().getYear() - birthDate.getYear();
-//            for (AgeGroup g : AgeGroup.values()) {
-//                if (age <= g.max && age > g.min) {
-//                    return g;
-//                }
-//            }
-//            return Old;
-//        }
-//    }
-//
 //    private Chart getBasicChart(ChartType type) {
 //        Chart chart = new Chart(type);
 //        // title from panel
@@ -168,22 +286,14 @@ public class AnalyzeView extends MVerticalLayout implements View {
 //        return chart;
 //    }
 //
-//    private Component ageDistribution(List<Customer> customerData) {
+//    private Component ageDistribution(CustomerStatistics statistics) {
 //        Integer[] menValues = new Integer[AgeGroup.values().length];
 //        Integer[] womenValues = new Integer[AgeGroup.values().length];
-//        for (int i = 0; i < AgeGroup.values().length; i++) {
-//            menValues[i] = 0;
-//            womenValues[i] = 0;
-//        }
-//        for (Customer c : customerData) {
-//            if (c.getBirthDate() != null) {
-//                AgeGroup g = AgeGroup.getAgeGroup(c.getBirthDate());
-//                if (c.getGender() == Gender.Female) {
-//                    womenValues[g.ordinal()]++;
-//                } else {
-//                    menValues[g.ordinal()]++;
-//                }
-//            }
+//        Integer[] unknownValues = new Integer[AgeGroup.values().length];
+//        for (AgeGroup g : AgeGroup.values()) {
+//            menValues[g.ordinal()] = statistics.getCount(g, Gender.Male);
+//            womenValues[g.ordinal()] = statistics.getCount(g, Gender.Female);
+//            unknownValues[g.ordinal()] = statistics.getUnknownGenderCount(g);
 //        }
 //
 //        Chart chart = getBasicChart(ChartType.COLUMN);
@@ -193,8 +303,8 @@ public class AnalyzeView extends MVerticalLayout implements View {
 //        XAxis xAxis = new XAxis();
 //        String[] names = new String[AgeGroup.values().length];
 //        for (AgeGroup g : AgeGroup.values()) {
-//            names[g.ordinal()] = String.format("%s-%s", g.min,
-//                    g.max);
+//            names[g.ordinal()] = String.format("%s-%s", g.getMin(),
+//                    g.getMax());
 //        }
 //        xAxis.setCategories(names);
 //        conf.addxAxis(xAxis);
@@ -215,28 +325,23 @@ public class AnalyzeView extends MVerticalLayout implements View {
 //
 //        conf.addSeries(new ListSeries("Men", menValues));
 //        conf.addSeries(new ListSeries("Women", womenValues));
+//        conf.addSeries(new ListSeries("Unknown", unknownValues));
 //
 //        return wrapInPanel(chart, "Age distribution");
 //
 //    }
 //
-//    private Component createStatusFunnel(List<Customer> customerData) {
-//        int[] values = new int[CustomerStatus.values().length];
-//        for (Customer c : customerData) {
-//            if (c.getStatus() != null) {
-//                values[c.getStatus().ordinal()]++;
-//            }
-//        }
+//    private Component createStatusFunnel(CustomerStatistics statistics) {
 //        Chart chart = getBasicChart(ChartType.FUNNEL);
 //        DataSeries dataSeries = new DataSeries();
 //        dataSeries.add(new DataSeriesItem("Imported lead",
-//                values[CustomerStatus.ImportedLead.ordinal()]));
+//                statistics.getCount(CustomerStatus.ImportedLead)));
 //        dataSeries.add(new DataSeriesItem("Not contacted",
-//                values[CustomerStatus.NotContacted.ordinal()]));
+//                statistics.getCount(CustomerStatus.NotContacted)));
 //        dataSeries.add(new DataSeriesItem("Contacted",
-//                values[CustomerStatus.Contacted.ordinal()]));
+//                statistics.getCount(CustomerStatus.Contacted)));
 //        dataSeries.add(new DataSeriesItem("Customer",
-//                values[CustomerStatus.Customer.ordinal()]));
+//                statistics.getCount(CustomerStatus.Customer)));
 //
 //        Configuration conf = chart.getConfiguration();
 //        conf.getChart().setMarginRight(75);
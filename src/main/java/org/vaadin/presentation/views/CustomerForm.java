@@ -34,6 +34,7 @@ import com.vaadin.ui.RadioButtonGroup;
 import com.vaadin.ui.TextField;
 import com.vaadin.ui.themes.ValoTheme;
 import java.util.stream.Stream;
+import org.vaadin.backend.CustomerConflictException;
 import org.vaadin.backend.CustomerService;
 import org.vaadin.backend.domain.Customer;
 import org.vaadin.backend.domain.CustomerStatus;
@@ -77,10 +78,20 @@ public class CustomerForm extends AbstractForm<Customer> {
     RadioButtonGroup<Gender> gender = new RadioButtonGroup<>("Gender");
     TextField email = new TextField("Email");
 
+    // the values the current edit started from, for merging concurrent
+    // edits on save
+    private Customer base;
+
     public CustomerForm() {
         super(Customer.class);
     }
 
+    @Override
+    public void setEntity(Customer entity) {
+        base = entity == null ? null : entity.copy();
+        super.setEntity(entity);
+    }
+
     @Override
     protected Component createContent() {
         setStyleName(ValoTheme.LAYOUT_CARD);
@@ -109,18 +120,28 @@ public class CustomerForm extends AbstractForm<Customer> {
         gender.setStyleName(ValoTheme.OPTIONGROUP_HORIZONTAL);
         setSavedHandler(customer -> {
             try {
-                // make EJB call to save the entity
-                service.saveOrPersist(customer);
+                // make EJB call to save the entity, edits made meanwhile
+                // by others to other fields are merged
+                Customer saved = service.save(base, customer);
                 // fire save event to let other UI components know about
                 // the change
-                saveEvent.fire(customer);
-            } catch (EJBException e) {
+                saveEvent.fire(saved);
+            } catch (CustomerConflictException e) {
                 /*
                 * The Customer object uses optimitic locking with the
                 * version field. Notify user the editing didn't succeed.
                  */
-                Notification.show("The customer was concurrently edited "
-                        + "by someone else. Your changes were discarded.",
+                Notification.show(e.getCurrent() == null
+                        ? "The customer was removed by someone else."
+                        : "The customer was concurrently edited by someone "
+                        + "else. Your changes were discarded.",
+                        e.getFields().isEmpty() ? null
+                        : "Conflicting fields: " + String.join(", ",
+                                e.getFields()),
+                        Notification.Type.ERROR_MESSAGE);
+                refrehsEvent.fire(customer);
+            } catch (EJBException e) {
+                Notification.show("Saving the customer failed.",
                         Notification.Type.ERROR_MESSAGE);
                 refrehsEvent.fire(customer);
             }
@@ -26,16 +26,31 @@
  */
 package org.vaadin.presentation.views;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 
+import org.vaadin.backend.CustomerChange;
+import org.vaadin.backend.CustomerKey;
 import org.vaadin.backend.CustomerService;
 import org.vaadin.backend.domain.Customer;
+import org.vaadin.backend.domain.CustomerSummary;
 import org.vaadin.cdiviewmenu.ViewMenuItem;
 import org.vaadin.presentation.AppUI;
+import org.vaadin.presentation.AsyncLoader;
+import org.vaadin.presentation.CustomerChangeBroadcaster;
 import org.vaadin.presentation.ScreenSize;
 import org.vaadin.presentation.views.CustomerEvent.Type;
 import org.vaadin.viritin.button.MButton;
@@ -44,15 +59,23 @@ import org.vaadin.viritin.layouts.MHorizontalLayout;
 import org.vaadin.viritin.layouts.MVerticalLayout;
 
 import com.vaadin.cdi.CDIView;
+import com.vaadin.data.provider.ConfigurableFilterDataProvider;
+import com.vaadin.data.provider.DataProvider;
+import com.vaadin.data.provider.Query;
+import com.vaadin.data.provider.QuerySortOrder;
 import com.vaadin.navigator.View;
 import com.vaadin.navigator.ViewChangeListener;
+import com.vaadin.server.ExternalResource;
+import com.vaadin.server.FileDownloader;
 import com.vaadin.server.FontAwesome;
 import com.vaadin.server.Page;
+import com.vaadin.shared.Registration;
 import com.vaadin.shared.ui.MarginInfo;
 import com.vaadin.shared.ui.ValueChangeMode;
 import com.vaadin.ui.Alignment;
 import com.vaadin.ui.Button;
 import com.vaadin.ui.Grid;
+import com.vaadin.ui.Notification;
 import com.vaadin.ui.TextField;
 import com.vaadin.ui.UI;
 
@@ -70,8 +93,44 @@ public class CustomerListView extends MVerticalLayout implements View {
     @Inject
     CustomerForm customerEditor;
 
+    @Inject
+    CustomerChangeBroadcaster broadcaster;
+
+    @Inject
+    AsyncLoader loader;
+
+    // changes made in other sessions, registered while attached
+    private transient Registration changeRegistration;
+
     // Introduce and configure some UI components used on this view
-    Grid<Customer> customerListing = new Grid(Customer.class);
+    Grid<CustomerSummary> customerListing = new Grid(CustomerSummary.class);
+
+    ConfigurableFilterDataProvider<CustomerSummary, Void, String> dataProvider;
+
+    PageKeys pageKeys = new PageKeys();
+
+    /*
+     * The filter pipeline: value changes are coalesced for a short while and
+     * then queried in a background thread. Only the result for the newest
+     * filter value is applied, older pending queries are cancelled.
+     */
+    private static final long FILTER_DELAY_MS = 100;
+
+    private static final int PREFETCH_SIZE = 100;
+
+    @Resource
+    ManagedScheduledExecutorService executor;
+
+    private transient Future<?> pendingFilter;
+
+    private int filterGeneration;
+
+    private FilterResult prefetched;
+
+    private List<QuerySortOrder> lastSortOrders = Collections.emptyList();
+
+    // true while the editor has a customer that isn't in the DB yet
+    private boolean addingCustomer;
 
     MHorizontalLayout mainContent = new MHorizontalLayout().
             withFullWidth().withMargin(false).expand(customerListing);
@@ -82,9 +141,24 @@ public class CustomerListView extends MVerticalLayout implements View {
 
     Button addButton = new MButton(FontAwesome.EDIT, e -> addCustomer());
 
+    // streamed by CustomerExportServlet
+    Button exportButton = new MButton(FontAwesome.DOWNLOAD).withDescription(
+            "Export all customers as CSV");
+
     @PostConstruct
     public void init() {
 
+        /*
+         * The Grid pulls only the rows it is about to display from the EJB,
+         * so the session never holds more than a couple of pages of
+         * customers, no matter how large the table is. The data provider is
+         * connected once the first page has been loaded in the background.
+         */
+        dataProvider = DataProvider.<CustomerSummary, String>fromFilteringCallbacks(
+                this::fetchCustomers,
+                this::countCustomers
+        ).withConfigurableFilter();
+
         /*
          * Add value change listener to table that opens the selected customer into
          * an editor.
@@ -100,7 +174,10 @@ public class CustomerListView extends MVerticalLayout implements View {
          * */
         filter.setPlaceholder("Filter customers...");
         filter.setValueChangeMode(ValueChangeMode.LAZY);
-        filter.addValueChangeListener(e -> listCustomers(e.getValue()));
+        filter.addValueChangeListener(e -> filterCustomers(e.getValue()));
+
+        new FileDownloader(new ExternalResource("export/customers.csv")).
+                extend(exportButton);
 
 
         /* "Responsive Web Design" can be done with plain Java as well. Here we
@@ -116,7 +193,9 @@ public class CustomerListView extends MVerticalLayout implements View {
             layout();
         });
 
-        listCustomers();
+        // render the empty Grid right away and fill it via the filter
+        // pipeline, so the initial query doesn't block the UI
+        filterCustomers(filter.getValue());
     }
 
     /**
@@ -134,7 +213,8 @@ public class CustomerListView extends MVerticalLayout implements View {
         removeAllComponents();
         if (ScreenSize.getScreenSize() == ScreenSize.LARGE) {
             addComponents(
-                    new MHorizontalLayout(header, filter, addButton)
+                    new MHorizontalLayout(header, filter, addButton,
+                            exportButton)
                             .expand(header)
                             .alignAll(Alignment.MIDDLE_LEFT),
                     mainContent
@@ -144,7 +224,7 @@ public class CustomerListView extends MVerticalLayout implements View {
         } else {
             addComponents(
                     header,
-                    new MHorizontalLayout(filter, addButton)
+                    new MHorizontalLayout(filter, addButton, exportButton)
                             .expand(filter)
                             .alignAll(Alignment.MIDDLE_LEFT),
                     mainContent
@@ -166,7 +246,9 @@ public class CustomerListView extends MVerticalLayout implements View {
         } else {
             customerListing.removeAllColumns();
             customerListing.addColumn(c -> c.getFirstName() + " " + c.getLastName())
-                    .setCaption("Name");
+                    .setCaption("Name")
+                    // sorted by the database, see CustomerService.fetch
+                    .setSortProperty("lastName", "firstName");
             if (ScreenSize.getScreenSize() == ScreenSize.MEDIUM) {
                 customerListing.addColumn("email");
             }
@@ -182,34 +264,147 @@ public class CustomerListView extends MVerticalLayout implements View {
     // In a big project, consider using separate controller/presenter
     // for improved testability. MVP is a popular pattern for large
     // Vaadin applications.
-    private void listCustomers() {
-        // Here we just fetch data straight from the EJB.
-        //
-        // If you expect a huge amount of data, do proper paging,
-        // using setDataProvider method, see:
+    private void listCustomers(String filterString) {
+        // The data is fetched lazily, page by page, by the data provider, see:
         // https://vaadin.com/blog/-/blogs/lazy-loading-with-vaadin-8
-        if (filter.getValue() == null) {
-            customerListing.setItems(new ArrayList<>(service.findAll()));
+
+        // The known page boundaries and the prefetched results are for the
+        // previous filter
+        pageKeys.clear();
+        prefetched = null;
+        // Setting the filter refreshes the Grid, which keeps its sort order
+        dataProvider.setFilter(filterString);
+    }
+
+    /**
+     * Queries the count and the first page for the new filter value in a
+     * background thread, so that typing doesn't block the UI. The result is
+     * applied with UI.access and pushed to the client, unless the filter
+     * has changed again in the meantime.
+     */
+    private void filterCustomers(String filterString) {
+        if (pendingFilter != null) {
+            pendingFilter.cancel(true);
+        }
+        final int generation = ++filterGeneration;
+        final UI ui = UI.getCurrent();
+        final List<QuerySortOrder> sortOrders = lastSortOrders;
+        pendingFilter = executor.schedule(() -> {
+            FilterResult result = null;
+            try {
+                result = new FilterResult(filterString, sortOrders,
+                        service.count(filterString),
+                        service.fetch(filterString, 0, PREFETCH_SIZE,
+                                sortOrders));
+            } catch (RuntimeException e) {
+                // let the data provider query again in the UI thread
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            final FilterResult filterResult = result;
+            ui.access(() -> {
+                // drop results of superseded filter values
+                if (generation == filterGeneration) {
+                    listCustomers(filterString);
+                    prefetched = filterResult;
+                    if (customerListing.getDataProvider() != dataProvider) {
+                        customerListing.setDataProvider(dataProvider);
+                    }
+                }
+            });
+        }, FILTER_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private int countCustomers(Query<CustomerSummary, String> query) {
+        String filterString = query.getFilter().orElse(null);
+        if (prefetched != null && prefetched.isFor(filterString)) {
+            return prefetched.count;
+        }
+        return service.count(filterString);
+    }
+
+    private Stream<CustomerSummary> fetchCustomers(Query<CustomerSummary, String> query) {
+        String filterString = query.getFilter().orElse(null);
+        List<QuerySortOrder> sortOrders = query.getSortOrders();
+        lastSortOrders = sortOrders;
+        if (prefetched != null && prefetched.covers(query)) {
+            return prefetched.firstPage.stream().limit(query.getLimit());
+        }
+        // Seek from the closest page boundary we know, so that scrolling
+        // deep into the Grid doesn't make the DB skip all preceding rows
+        Map.Entry<Integer, CustomerKey> start = pageKeys.closest(filterString,
+                sortOrders, query.getOffset());
+        List<CustomerSummary> page;
+        if (start == null) {
+            page = service.fetch(filterString, query.getOffset(),
+                    query.getLimit(), sortOrders);
         } else {
-            listCustomers(filter.getValue());
+            page = service.fetch(filterString, start.getValue(),
+                    query.getOffset() - start.getKey(), query.getOffset(),
+                    query.getLimit(), sortOrders);
         }
+        if (!page.isEmpty()) {
+            pageKeys.remember(query.getOffset() + page.size(),
+                    CustomerKey.of(page.get(page.size() - 1), sortOrders));
+        }
+        return page.stream();
     }
 
-    private void listCustomers(String filterString) {
-        customerListing.setItems(new ArrayList<>(service.findByName(filterString)));
-        // TODO maintain sorting somehow
-        //customerTable.sort();
+    /**
+     * The count and the first page of customers for a filter value, queried
+     * by the filter pipeline.
+     */
+    private static class FilterResult implements Serializable {
+
+        final String filter;
+        final List<QuerySortOrder> sortOrders;
+        final int count;
+        final List<CustomerSummary> firstPage;
+
+        FilterResult(String filter, List<QuerySortOrder> sortOrders,
+                int count, List<CustomerSummary> firstPage) {
+            this.filter = filter;
+            this.sortOrders = sortOrders;
+            this.count = count;
+            this.firstPage = firstPage;
+        }
+
+        boolean isFor(String filterString) {
+            return Objects.equals(filter, filterString);
+        }
+
+        boolean covers(Query<CustomerSummary, String> query) {
+            return isFor(query.getFilter().orElse(null))
+                    && PageKeys.isSameSort(sortOrders, query.getSortOrders())
+                    && query.getOffset() == 0
+                    && (query.getLimit() <= firstPage.size()
+                    || firstPage.size() == count);
+        }
     }
 
-    void editCustomer(Customer customer) {
-        if (customer != null) {
-            openEditor(customer);
+    void editCustomer(CustomerSummary customer) {
+        addingCustomer = false;
+        if (customer == null) {
+            closeEditor();
+            return;
+        }
+        // The listing only has a summary of the customer, load the full
+        // entity for editing
+        Customer entity = service.find(customer.getId());
+        if (entity != null) {
+            openEditor(entity);
         } else {
+            // removed, e.g. in another session, after the rows were listed
+            Notification.show("The customer has been removed",
+                    Notification.Type.TRAY_NOTIFICATION);
             closeEditor();
+            refreshCustomers();
         }
     }
 
     void addCustomer() {
+        addingCustomer = true;
         openEditor(new Customer());
     }
 
@@ -246,20 +441,89 @@ public class CustomerListView extends MVerticalLayout implements View {
      */
     void saveCustomer(@Observes
             @CustomerEvent(Type.SAVE) Customer customer) {
-        listCustomers();
+        if (addingCustomer) {
+            refreshCustomers();
+        } else {
+            refreshCustomer(CustomerSummary.of(customer));
+        }
+        addingCustomer = false;
         closeEditor();
     }
 
     void resetCustomer(@Observes
             @CustomerEvent(Type.REFRESH) Customer customer) {
-        listCustomers();
+        // the edit was discarded, show the current values from the DB
+        Customer current = service.find(customer.getId());
+        if (current != null) {
+            refreshCustomer(CustomerSummary.of(current));
+        } else {
+            refreshCustomers();
+        }
         closeEditor();
     }
 
     void deleteCustomer(@Observes
             @CustomerEvent(Type.DELETE) Customer customer) {
         closeEditor();
-        listCustomers();
+        refreshCustomers();
+    }
+
+    /**
+     * Updates a single row in the Grid, without querying the DB.
+     */
+    private void refreshCustomer(CustomerSummary customer) {
+        // the prefetched page may hold the old values
+        prefetched = null;
+        dataProvider.refreshItem(customer);
+    }
+
+    /**
+     * Refreshes the Grid after customers were added or removed. The page
+     * boundaries shift, but only the count and the visible rows are
+     * queried again.
+     */
+    private void refreshCustomers() {
+        pageKeys.clear();
+        prefetched = null;
+        dataProvider.refreshAll();
+    }
+
+    @Override
+    public void attach() {
+        super.attach();
+        changeRegistration = broadcaster.register(getUI(),
+                this::customersChanged);
+    }
+
+    @Override
+    public void detach() {
+        if (changeRegistration != null) {
+            changeRegistration.remove();
+            changeRegistration = null;
+        }
+        super.detach();
+    }
+
+    /**
+     * Applies the changes pushed by the broadcaster, which only tells the ids
+     * of the changed customers. The changed rows are loaded with one query in
+     * a background thread, not while holding the session lock.
+     */
+    private void customersChanged(List<CustomerChange> changes) {
+        List<Integer> ids = new ArrayList<>(changes.size());
+        for (CustomerChange change : changes) {
+            if (change.getKind() != CustomerChange.Kind.SAVE) {
+                // rows were added or removed, this queries the visible rows
+                // anyway
+                refreshCustomers();
+                return;
+            }
+            ids.add(change.getCustomerId());
+        }
+        // customers deleted meanwhile are not found, their deletion is
+        // pushed separately
+        loader.load(() -> service.findSummaries(ids),
+                summaries -> summaries.forEach(this::refreshCustomer));
     }
 
     @Override
@@ -0,0 +1,192 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.presentation.views;
+
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.vaadin.backend.CustomerImporter;
+import org.vaadin.backend.CustomerImporter.ImportError;
+import org.vaadin.backend.CustomerImporter.ImportResult;
+import org.vaadin.cdiviewmenu.ViewMenuItem;
+import org.vaadin.presentation.AsyncLoader;
+import org.vaadin.viritin.label.Header;
+import org.vaadin.viritin.label.RichText;
+import org.vaadin.viritin.layouts.MVerticalLayout;
+
+import com.vaadin.cdi.CDIView;
+import com.vaadin.navigator.View;
+import com.vaadin.navigator.ViewChangeListener;
+import com.vaadin.server.FontAwesome;
+import com.vaadin.shared.ui.MarginInfo;
+import com.vaadin.ui.Grid;
+import com.vaadin.ui.Label;
+import com.vaadin.ui.ProgressBar;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.Upload;
+
+/**
+ * Imports customers from a CSV file. The file is uploaded to a temporary
+ * file and imported in a background thread, the progress is pushed to the
+ * browser.
+ */
+@CDIView("import")
+@ViewMenuItem(icon = FontAwesome.UPLOAD, order = 2)
+public class ImportView extends MVerticalLayout implements View {
+
+    @Inject
+    CustomerImporter importer;
+
+    @Inject
+    AsyncLoader loader;
+
+    private final Upload upload = new Upload();
+
+    private final ProgressBar progress = new ProgressBar();
+
+    private final Label status = new Label();
+
+    private final Grid<ImportError> errors = new Grid<>();
+
+    private Path file;
+
+    @PostConstruct
+    void init() {
+        add(new Header("Import customers").setHeaderLevel(2));
+        add(new RichText().withMarkDown("Upload a CSV file with a header "
+                + "row naming the columns, like in the export: `firstName`, "
+                + "`lastName`, `email`, `status`, `gender`, `birthDate` "
+                + "(e.g. 1980-12-31), `latitude` and `longitude`. "
+                + "Rows that don't pass validation are skipped and listed "
+                + "below."));
+
+        upload.setButtonCaption("Import");
+        upload.setImmediateMode(true);
+        upload.setReceiver(this::receiveUpload);
+        upload.addProgressListener((read, length) -> {
+            if (length > 0) {
+                progress.setValue((float) read / length);
+            }
+        });
+        upload.addSucceededListener(e -> importFile());
+        upload.addFailedListener(e -> {
+            deleteFile();
+            showStatus("Upload failed");
+        });
+        add(upload);
+
+        progress.setVisible(false);
+        status.setVisible(false);
+        add(progress, status);
+
+        errors.addColumn(ImportError::getLine).setCaption("Line");
+        errors.addColumn(ImportError::getMessage).setCaption("Error");
+        errors.setWidth("100%");
+        errors.setVisible(false);
+        add(errors);
+
+        setMargin(new MarginInfo(false, true, true, true));
+    }
+
+    private OutputStream receiveUpload(String filename, String mimeType) {
+        try {
+            file = Files.createTempFile("customers", ".csv");
+            progress.setIndeterminate(false);
+            progress.setValue(0f);
+            progress.setVisible(true);
+            errors.setVisible(false);
+            showStatus("Uploading " + filename + "...");
+            return new FileOutputStream(file.toFile());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void importFile() {
+        upload.setEnabled(false);
+        progress.setIndeterminate(true);
+        showStatus("Importing...");
+        final UI ui = UI.getCurrent();
+        final Path importedFile = file;
+        loader.load(() -> {
+            try (BufferedReader reader = Files.newBufferedReader(importedFile,
+                    StandardCharsets.UTF_8)) {
+                return importer.importCsv(reader, rows -> ui.access(
+                        () -> showStatus("Importing... " + rows
+                                + " rows read")));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                deleteFile(importedFile);
+            }
+        }, this::showResult).thenRun(() -> ui.access(() -> {
+            // also after a failed import
+            upload.setEnabled(true);
+            progress.setVisible(false);
+        }));
+    }
+
+    private void showResult(ImportResult result) {
+        showStatus(result.getImported() + " customers imported, "
+                + result.getErrorCount() + " rows skipped.");
+        errors.setItems(result.getErrors());
+        errors.setVisible(!result.getErrors().isEmpty());
+    }
+
+    private void showStatus(String message) {
+        status.setValue(message);
+        status.setVisible(true);
+    }
+
+    private void deleteFile() {
+        if (file != null) {
+            deleteFile(file);
+            file = null;
+        }
+    }
+
+    private static void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // left for the OS to clean up
+        }
+    }
+
+    @Override
+    public void enter(ViewChangeListener.ViewChangeEvent viewChangeEvent) {
+    }
+}
@@ -26,19 +26,26 @@
  */
 package org.vaadin.presentation.views;
 
+import java.util.List;
+
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 
+import org.vaadin.addon.leaflet.LLayerGroup;
 import org.vaadin.addon.leaflet.LMap;
 import org.vaadin.addon.leaflet.LMarker;
 import org.vaadin.addon.leaflet.LOpenStreetMapLayer;
 import org.vaadin.addon.leaflet.LeafletClickEvent;
 import org.vaadin.addon.leaflet.LeafletClickListener;
 import org.vaadin.addon.leaflet.control.LZoom;
+import org.vaadin.addon.leaflet.shared.Bounds;
 import org.vaadin.addon.leaflet.shared.ControlPosition;
+import org.vaadin.backend.CustomerClusters;
 import org.vaadin.backend.CustomerService;
+import org.vaadin.backend.CustomerSpatialIndex;
 import org.vaadin.backend.domain.Customer;
 import org.vaadin.cdiviewmenu.ViewMenuItem;
+import org.vaadin.presentation.AsyncLoader;
 import org.vaadin.viritin.label.Header;
 import org.vaadin.viritin.layouts.MVerticalLayout;
 
@@ -53,11 +60,36 @@ import com.vaadin.ui.Notification;
 @ViewMenuItem(icon = FontAwesome.GLOBE, order = 1)
 public class MapView extends MVerticalLayout implements View {
 
+    /**
+     * The maximum number of markers shown at once, zooming in reveals the
+     * rest.
+     */
+    private static final int MAX_MARKERS = 500;
+
     @Inject
     CustomerService service;
 
+    @Inject
+    AsyncLoader loader;
+
+    @Inject
+    CustomerSpatialIndex spatialIndex;
+
     LMap worldMap = new LMap();
 
+    LLayerGroup markers = new LLayerGroup();
+
+    private int boundsGeneration;
+
+    private int clusterZoom;
+
+    /**
+     * Shared by all markers, which only carry a customer id or a cluster as
+     * their data.
+     */
+    private final LeafletClickListener markerClickListener =
+            this::markerClicked;
+
     @PostConstruct
     void init() {
 
@@ -68,6 +100,10 @@ public class MapView extends MVerticalLayout implements View {
         LZoom zoom = new LZoom();
         zoom.setPosition(ControlPosition.topright);
         worldMap.addControl(zoom);
+
+        // only the customers in the visible area are loaded
+        worldMap.addMoveEndListener(e -> showCustomers(e.getBounds(),
+                (int) Math.round(e.getZoomLevel())));
     }
 
     @Override
@@ -76,18 +112,109 @@ public class MapView extends MVerticalLayout implements View {
         LOpenStreetMapLayer osm = new LOpenStreetMapLayer();
         osm.setDetectRetina(true);
         worldMap.addComponent(osm);
-        for (final Customer customer : service.findAll()) {
-            if(customer.getLocation() != null) {
-                LMarker marker = new LMarker(customer.getLocation());
-                marker.addClickListener(e -> {
-                    Notification.show(
-                        "Customer: " + customer.getFirstName() + " " + customer.
-                        getLastName()
-                    );
-                });
-                worldMap.addComponent(marker);
-           }
+        markers.removeAllComponents();
+        worldMap.addComponent(markers);
+        // the map is displayed right away, markers are added once loaded
+        loader.load(service::findLocationBounds, extent -> {
+            if (extent != null) {
+                Bounds bounds = new Bounds();
+                bounds.setSouthWestLat(extent[0]);
+                bounds.setSouthWestLon(extent[1]);
+                bounds.setNorthEastLat(extent[2]);
+                bounds.setNorthEastLon(extent[3]);
+                worldMap.zoomToExtent(bounds);
+                showCustomers(bounds, estimateZoomLevel(bounds));
+            }
+        });
+    }
+
+    private void showCustomers(Bounds bounds, int zoom) {
+        final int generation = ++boundsGeneration;
+        if (zoom <= CustomerClusters.MAX_ZOOM) {
+            // dense areas are shown as clusters of customers
+            loader.load(() -> spatialIndex.clusters(zoom,
+                    bounds.getSouthWestLat(), bounds.getSouthWestLon(),
+                    bounds.getNorthEastLat(), bounds.getNorthEastLon()),
+                    result -> {
+                        if (generation == boundsGeneration) {
+                            showClusters(result, zoom);
+                        }
+                    });
+            return;
+        }
+        loader.load(() -> spatialIndex.range(bounds.getSouthWestLat(),
+                bounds.getSouthWestLon(), bounds.getNorthEastLat(),
+                bounds.getNorthEastLon(), MAX_MARKERS), customers -> {
+            // the map may have been moved again while loading
+            if (generation == boundsGeneration) {
+                showCustomers(customers);
+            }
+        });
+    }
+
+    private void showClusters(List<CustomerClusters.Cluster> result,
+            int zoom) {
+        markers.removeAllComponents();
+        clusterZoom = zoom;
+        for (CustomerClusters.Cluster cluster : result) {
+            LMarker marker = new LMarker(cluster.getLatitude(),
+                    cluster.getLongitude());
+            if (cluster.getCount() == 1) {
+                marker.setData(cluster.getCustomerId());
+            } else {
+                marker.setDivIcon("<b>" + cluster.getCount() + "</b>");
+                marker.setTitle(cluster.getCount() + " customers");
+                marker.setData(cluster);
+            }
+            marker.addClickListener(markerClickListener);
+            markers.addComponent(marker);
+        }
+    }
+
+    /**
+     * The zoom level at which the bounds fill a map about 1000 pixels wide,
+     * used before the client has reported the actual zoom level.
+     */
+    private static int estimateZoomLevel(Bounds bounds) {
+        double span = Math.max(bounds.getNorthEastLon() - bounds.
+                getSouthWestLon(), 0.0001);
+        int zoom = (int) Math.floor(Math.log(360 * 4 / span) / Math.log(2));
+        return Math.max(0, Math.min(18, zoom));
+    }
+
+    private void showCustomers(CustomerSpatialIndex.Locations customers) {
+        markers.removeAllComponents();
+        for (int i = 0; i < customers.size(); i++) {
+            LMarker marker = new LMarker(customers.getLatitude(i),
+                    customers.getLongitude(i));
+            // markers only know the id, names are loaded when clicked
+            marker.setData(customers.getId(i));
+            marker.addClickListener(markerClickListener);
+            markers.addComponent(marker);
+        }
+        if (customers.size() == MAX_MARKERS) {
+            Notification.show("Zoom in to see all customers",
+                    Notification.Type.TRAY_NOTIFICATION);
+        }
+    }
+
+    private void markerClicked(LeafletClickEvent event) {
+        Object data = ((LMarker) event.getSource()).getData();
+        if (data instanceof Integer) {
+            showCustomer((Integer) data);
+        } else if (data instanceof CustomerClusters.Cluster) {
+            // expand the cluster by zooming in
+            CustomerClusters.Cluster cluster = (CustomerClusters.Cluster) data;
+            worldMap.setCenter(cluster.getLatitude(), cluster.getLongitude());
+            worldMap.setZoomLevel(clusterZoom + 2);
+        }
+    }
+
+    private void showCustomer(int id) {
+        Customer customer = service.find(id);
+        if (customer != null) {
+            Notification.show("Customer: " + customer.getFirstName() + " "
+                    + customer.getLastName());
         }
-        worldMap.zoomToContent();
     }
 }
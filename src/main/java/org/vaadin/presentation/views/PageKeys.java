@@ -0,0 +1,101 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.presentation.views;
+
+import com.vaadin.data.provider.QuerySortOrder;
+import org.vaadin.backend.CustomerKey;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Remembers the key of the last row of each page the Grid has fetched, so
+ * that the following pages can be fetched by seeking past a known key. The
+ * keys are only valid for one filter and sort order combination, so they are
+ * dropped whenever either of those changes.
+ */
+class PageKeys implements Serializable {
+
+    private final NavigableMap<Integer, CustomerKey> keys = new TreeMap<>();
+
+    private String filter;
+
+    private List<QuerySortOrder> sortOrders = Collections.emptyList();
+
+    /**
+     * @param filter the current filter
+     * @param sortOrders the current sort orders
+     * @param offset the offset of the requested page
+     * @return the closest known key at or before the offset, keyed by the
+     * offset of the row that follows it, or null if none is known
+     */
+    Map.Entry<Integer, CustomerKey> closest(String filter,
+            List<QuerySortOrder> sortOrders, int offset) {
+        if (!Objects.equals(this.filter, filter) || !isSameSort(this.sortOrders, sortOrders)) {
+            keys.clear();
+            this.filter = filter;
+            this.sortOrders = new ArrayList<>(sortOrders);
+        }
+        return keys.floorEntry(offset);
+    }
+
+    /**
+     * @param offset the offset of the row following the key
+     * @param key the key of the row at offset - 1, ignored if null
+     */
+    void remember(int offset, CustomerKey key) {
+        if (key != null) {
+            keys.put(offset, key);
+        }
+    }
+
+    void clear() {
+        keys.clear();
+    }
+
+    /**
+     * QuerySortOrder doesn't implement equals, so compare the contents.
+     */
+    static boolean isSameSort(List<QuerySortOrder> a, List<QuerySortOrder> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (!a.get(i).getSorted().equals(b.get(i).getSorted())
+                    || a.get(i).getDirection() != b.get(i).getDirection()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
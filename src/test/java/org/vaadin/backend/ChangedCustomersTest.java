@@ -0,0 +1,102 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChangedCustomersTest {
+
+    private final LocalCustomerChangeChannel channel
+            = new LocalCustomerChangeChannel();
+
+    private final ChangedCustomers changes = new ChangedCustomers();
+
+    @Before
+    public void setUp() {
+        channel.subscribe(changes);
+    }
+
+    @Test
+    public void collectsTheIdsOfEveryKindOfChange() {
+        channel.publish(CustomerChange.created(1));
+        channel.publish(CustomerChange.saved(2));
+        channel.publish(CustomerChange.deleted(3));
+        channel.publish(CustomerChange.saved(1));
+
+        assertFalse(changes.takeAll());
+        assertFalse(changes.isEmpty());
+        List<Integer> taken = changes.take(10);
+        Collections.sort(taken);
+        assertEquals(Arrays.asList(1, 2, 3), taken);
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void takesAtMostTheGivenNumberOfIds() {
+        for (int id = 1; id <= 5; id++) {
+            channel.publish(CustomerChange.saved(id));
+        }
+
+        List<Integer> taken = new ArrayList<>(changes.take(2));
+        assertEquals(2, taken.size());
+        taken.addAll(changes.take(2));
+        taken.addAll(changes.take(2));
+        Collections.sort(taken);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), taken);
+        assertTrue(changes.take(2).isEmpty());
+    }
+
+    @Test
+    public void allChangeRequestsOneReload() {
+        channel.publish(CustomerChange.saved(1));
+        channel.publish(CustomerChange.all());
+
+        assertTrue(changes.takeAll());
+        // the reload reads the saved customer too
+        assertTrue(changes.isEmpty());
+        assertFalse(changes.takeAll());
+    }
+
+    @Test
+    public void changesAfterAReloadAreKept() {
+        channel.publish(CustomerChange.all());
+        assertTrue(changes.takeAll());
+        channel.publish(CustomerChange.deleted(4));
+
+        assertEquals(Collections.singletonList(4), changes.take(10));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CsvReaderTest {
+
+    @Test
+    public void readsRecordsAndLineNumbers() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader("a,b\n1,2\n"));
+
+        assertArrayEquals(new String[]{"a", "b"}, csv.readRecord());
+        assertEquals(1, csv.getRecordLine());
+        assertArrayEquals(new String[]{"1", "2"}, csv.readRecord());
+        assertEquals(2, csv.getRecordLine());
+        assertNull(csv.readRecord());
+    }
+
+    @Test
+    public void quotedFieldsMayContainSeparatorsQuotesAndLineBreaks()
+            throws IOException {
+        CsvReader csv = new CsvReader(new StringReader(
+                "\"x, y\",\"say \"\"hi\"\"\",\"multi\nline\"\nnext\n"));
+
+        assertArrayEquals(new String[]{"x, y", "say \"hi\"", "multi\nline"},
+                csv.readRecord());
+        assertEquals(1, csv.getRecordLine());
+        assertArrayEquals(new String[]{"next"}, csv.readRecord());
+        assertEquals(3, csv.getRecordLine());
+        assertNull(csv.readRecord());
+    }
+
+    @Test
+    public void crlfEndsRecords() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader("a\r\nb\r\n"));
+
+        assertArrayEquals(new String[]{"a"}, csv.readRecord());
+        assertArrayEquals(new String[]{"b"}, csv.readRecord());
+        assertEquals(2, csv.getRecordLine());
+        assertNull(csv.readRecord());
+    }
+
+    @Test
+    public void emptyFieldsAndLastRecordWithoutLineBreak() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader("a,,\n\nb,"));
+
+        assertArrayEquals(new String[]{"a", "", ""}, csv.readRecord());
+        assertArrayEquals(new String[]{""}, csv.readRecord());
+        assertEquals(2, csv.getRecordLine());
+        assertArrayEquals(new String[]{"b", ""}, csv.readRecord());
+        assertEquals(3, csv.getRecordLine());
+        assertNull(csv.readRecord());
+    }
+}
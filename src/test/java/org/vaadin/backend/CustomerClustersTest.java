@@ -0,0 +1,120 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import org.junit.Test;
+
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CustomerClustersTest {
+
+    // two customers about a kilometer apart in Helsinki, one in Cape Town
+    private final CustomerSpatialIndex clusters = new CustomerSpatialIndex(
+            new int[]{1, 2, 3},
+            new double[]{60.17, 60.18, -33.92},
+            new double[]{24.94, 24.95, 18.42});
+
+    @Test
+    public void nearbyCustomersShareAClusterWhenZoomedOut() {
+        List<CustomerClusters.Cluster> result = clusters.clusters(0, -90,
+                -180, 90, 180);
+        result.sort(Comparator.comparingInt(CustomerClusters.Cluster::getCount));
+
+        assertEquals(2, result.size());
+        assertEquals(1, result.get(0).getCount());
+        assertEquals(3, result.get(0).getCustomerId());
+        assertEquals(2, result.get(1).getCount());
+        // no single customer to link to
+        assertEquals(0, result.get(1).getCustomerId());
+        // positioned at the average location
+        assertEquals(60.175, result.get(1).getLatitude(), 1e-9);
+        assertEquals(24.945, result.get(1).getLongitude(), 1e-9);
+    }
+
+    @Test
+    public void customersAreSeparatedWhenZoomedIn() {
+        List<CustomerClusters.Cluster> result = clusters.clusters(
+                CustomerClusters.MAX_ZOOM, 60, 24.5, 60.5, 25.5);
+        result.sort(Comparator.comparingInt(
+                CustomerClusters.Cluster::getCustomerId));
+
+        assertEquals(2, result.size());
+        assertEquals(1, result.get(0).getCustomerId());
+        assertEquals(2, result.get(1).getCustomerId());
+    }
+
+    @Test
+    public void onlyCellsInTheAreaAreReturned() {
+        // an area smaller than the number of cells, looked up cell by cell
+        List<CustomerClusters.Cluster> result = clusters.clusters(
+                CustomerClusters.MAX_ZOOM, -33.92, 18.42, -33.92, 18.42);
+
+        assertEquals(1, result.size());
+        assertEquals(3, result.get(0).getCustomerId());
+    }
+
+    @Test
+    public void zoomedInClustersAreAggregatedFromTheWholeCells() {
+        // a view ending between the two customers still shows both in the
+        // cluster of their cell
+        List<CustomerClusters.Cluster> result = clusters.clusters(
+                CustomerClusters.STORED_ZOOM + 1, 59, 23, 60.175, 24.945);
+
+        assertEquals(1, result.size());
+        assertEquals(2, result.get(0).getCount());
+    }
+
+    @Test
+    public void boundsPastThePolesAndTheDateLineAreClamped() {
+        assertEquals(2, clusters.clusters(2, -120, -400, 120, 400).size());
+        assertEquals(1, clusters.clusters(3, -100, 10, -30, 200).size());
+    }
+
+    @Test
+    public void removedCustomersLeaveTheirClusters() {
+        CustomerClusters stored = new CustomerClusters();
+        stored.add(1, 60.17, 24.94);
+        stored.add(2, 60.18, 24.95);
+        stored.remove(1, 60.17, 24.94);
+
+        List<CustomerClusters.Cluster> result = stored.level(0).clusters(-90,
+                -180, 90, 180);
+        assertEquals(1, result.size());
+        assertEquals(2, result.get(0).getCustomerId());
+        assertEquals(60.18, result.get(0).getLatitude(), 1e-9);
+    }
+
+    @Test
+    public void zoomLevelsAreClamped() {
+        assertEquals(2, clusters.clusters(-3, -90, -180, 90, 180).size());
+        assertEquals(1, clusters.clusters(CustomerClusters.MAX_ZOOM + 5,
+                -33.92, 18.42, -33.92, 18.42).size());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.backend.domain.Customer;
+import org.vaadin.backend.domain.CustomerStatus;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CustomerMergeTest {
+
+    private Customer base;
+
+    @Before
+    public void setUp() {
+        base = new Customer();
+        base.setFirstName("Jane");
+        base.setLastName("Doe");
+        base.setEmail("jane@example.com");
+        base.setStatus(CustomerStatus.NotContacted);
+        base.setLatitude(60.0);
+        base.setLongitude(25.0);
+        base.setVersion(1);
+    }
+
+    @Test
+    public void changesOnDifferentFieldsAreMerged() {
+        Customer edited = base.copy();
+        edited.setFirstName("Janet");
+        Customer current = base.copy();
+        current.setEmail("janet@example.com");
+        current.setVersion(2);
+
+        List<String> conflicts = CustomerMerge.merge(base, edited, current);
+
+        assertEquals(Collections.emptyList(), conflicts);
+        assertEquals("Janet", edited.getFirstName());
+        assertEquals("janet@example.com", edited.getEmail());
+        assertEquals(2, edited.getVersion());
+    }
+
+    @Test
+    public void sameChangeOnBothSidesIsNoConflict() {
+        Customer edited = base.copy();
+        edited.setStatus(CustomerStatus.Contacted);
+        Customer current = base.copy();
+        current.setStatus(CustomerStatus.Contacted);
+        current.setVersion(2);
+
+        assertEquals(Collections.emptyList(),
+                CustomerMerge.merge(base, edited, current));
+        assertEquals(CustomerStatus.Contacted, edited.getStatus());
+    }
+
+    @Test
+    public void clearedFieldIsMerged() {
+        Customer edited = base.copy();
+        Customer current = base.copy();
+        current.setLastName(null);
+        current.setVersion(2);
+
+        assertEquals(Collections.emptyList(),
+                CustomerMerge.merge(base, edited, current));
+        assertNull(edited.getLastName());
+    }
+
+    @Test
+    public void conflictingChangesLeaveTheEditAsItIs() {
+        Customer edited = base.copy();
+        edited.setFirstName("Janet");
+        edited.setEmail("janet@example.com");
+        Customer current = base.copy();
+        current.setFirstName("Jenny");
+        current.setLastName("Smith");
+        current.setEmail("jenny@example.com");
+        current.setVersion(2);
+
+        List<String> conflicts = CustomerMerge.merge(base, edited, current);
+
+        assertEquals(Arrays.asList("firstName", "email"), conflicts);
+        assertEquals("Janet", edited.getFirstName());
+        assertEquals("Doe", edited.getLastName());
+        assertEquals(1, edited.getVersion());
+    }
+
+    @Test
+    public void locationIsMergedAsOneField() {
+        Customer edited = base.copy();
+        edited.setLatitude(61.0);
+        Customer current = base.copy();
+        current.setLongitude(26.0);
+        current.setVersion(2);
+
+        // either move alone is kept, not a mix of the two
+        assertEquals(Collections.singletonList("location"),
+                CustomerMerge.merge(base, edited, current));
+        assertEquals(Double.valueOf(61.0), edited.getLatitude());
+        assertEquals(Double.valueOf(25.0), edited.getLongitude());
+
+        edited = base.copy();
+        assertEquals(Collections.emptyList(),
+                CustomerMerge.merge(base, edited, current));
+        assertEquals(Double.valueOf(60.0), edited.getLatitude());
+        assertEquals(Double.valueOf(26.0), edited.getLongitude());
+    }
+}
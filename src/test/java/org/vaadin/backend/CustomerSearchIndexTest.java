@@ -0,0 +1,93 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import com.vaadin.data.provider.QuerySortOrder;
+import com.vaadin.shared.data.sort.SortDirection;
+import org.junit.Test;
+import org.vaadin.backend.domain.CustomerStatus;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CustomerSearchIndexTest {
+
+    private final CustomerSearchIndex index = new CustomerSearchIndex(
+            Arrays.asList(
+                    row(3, "Anna", "Smith", "anna@example.com"),
+                    row(1, "Brian", "Andersson", "brian@example.com"),
+                    row(2, "Alex", null, "al@example.com"),
+                    row(4, "Sam", "Banks", "sam@banks.org")));
+
+    private static Object[] row(int id, String firstName, String lastName,
+            String email) {
+        return new Object[]{id, firstName, lastName, email,
+            CustomerStatus.Contacted, null};
+    }
+
+    @Test
+    public void shortFiltersMatchTheBeginningOfAnyField() {
+        assertArrayEquals(new int[]{1, 2, 3},
+                index.search("a", Collections.emptyList()));
+        assertArrayEquals(new int[]{1, 3},
+                index.search("An", Collections.emptyList()));
+        assertArrayEquals(new int[]{4},
+                index.search("sa", Collections.emptyList()));
+        assertArrayEquals(new int[0],
+                index.search("nn", Collections.emptyList()));
+    }
+
+    @Test
+    public void longerFiltersMatchAnywhere() {
+        assertArrayEquals(new int[]{1, 2, 3},
+                index.search("example", Collections.emptyList()));
+        assertArrayEquals(new int[]{1},
+                index.search("DERS", Collections.emptyList()));
+        assertArrayEquals(new int[]{4},
+                index.search("banks.org", Collections.emptyList()));
+    }
+
+    @Test
+    public void customersWithoutAValueAreSortedLast() {
+        assertArrayEquals(new int[]{1, 3, 2}, index.search("a",
+                Collections.singletonList(new QuerySortOrder("lastName",
+                        SortDirection.ASCENDING))));
+        assertArrayEquals(new int[]{3, 1, 2}, index.search("a",
+                Collections.singletonList(new QuerySortOrder("lastName",
+                        SortDirection.DESCENDING))));
+    }
+
+    @Test
+    public void countMatchesTheSearch() {
+        assertEquals(3, index.count("a"));
+        assertEquals(1, index.count("smi"));
+        assertEquals(0, index.count("xyz"));
+    }
+}
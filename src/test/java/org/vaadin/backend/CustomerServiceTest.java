@@ -0,0 +1,56 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CustomerServiceTest {
+
+    private static final int[] IDS = {7, 3, 9, 1, 5};
+
+    @Test
+    public void pageStartsAfterTheKey() {
+        assertEquals(3, CustomerService.pageStart(IDS, 9, 0, 40));
+        assertEquals(4, CustomerService.pageStart(IDS, 9, 1, 40));
+        assertEquals(1, CustomerService.pageStart(IDS, 7, 0, 40));
+    }
+
+    @Test
+    public void pageAfterTheLastCustomerIsEmpty() {
+        assertEquals(IDS.length, CustomerService.pageStart(IDS, 5, 0, 40));
+    }
+
+    @Test
+    public void missingKeyFallsBackToTheOffset() {
+        // e.g. the customer of the key was edited to not match the filter
+        assertEquals(2, CustomerService.pageStart(IDS, 42, 0, 2));
+        assertEquals(40, CustomerService.pageStart(IDS, 42, 1, 40));
+        assertEquals(2, CustomerService.pageStart(new int[0], 42, 0, 2));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import org.junit.Test;
+import org.vaadin.backend.CustomerSnapshot.Dimension;
+import org.vaadin.backend.domain.AgeGroup;
+import org.vaadin.backend.domain.CustomerStatus;
+import org.vaadin.backend.domain.Gender;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+
+public class CustomerSnapshotTest {
+
+    private static final int UNKNOWN_STATUS = Dimension.STATUS.getBuckets() - 1;
+    private static final int UNKNOWN_GENDER = Dimension.GENDER.getBuckets() - 1;
+    private static final int UNKNOWN_AGE = Dimension.AGE_GROUP.getBuckets() - 1;
+
+    private final CustomerSnapshot snapshot = snapshot();
+
+    @Test
+    public void countsCombinationsOfValues() {
+        CustomerSnapshot.Histogram histogram = snapshot.histogram(
+                Dimension.STATUS, Dimension.GENDER);
+
+        assertEquals(1, histogram.getCount(0, 0));
+        assertEquals(1, histogram.getCount(0, 1));
+        assertEquals(1, histogram.getCount(1, 1));
+        assertEquals(0, histogram.getCount(1, 0));
+        assertEquals(1, histogram.getCount(UNKNOWN_STATUS, UNKNOWN_GENDER));
+        assertEquals(4, histogram.getTotal());
+    }
+
+    @Test
+    public void countsAgeGroupsFromBirthDates() {
+        CustomerSnapshot.Histogram histogram = snapshot.histogram(
+                Dimension.AGE_GROUP);
+
+        assertEquals(1, histogram.getCount(AgeGroup.Children.ordinal()));
+        assertEquals(1, histogram.getCount(AgeGroup.Young.ordinal()));
+        assertEquals(1, histogram.getCount(AgeGroup.MiddleAged.ordinal()));
+        assertEquals(0, histogram.getCount(AgeGroup.Old.ordinal()));
+        assertEquals(1, histogram.getCount(UNKNOWN_AGE));
+    }
+
+    @Test
+    public void countsOnlyCustomersInTheArea() {
+        CustomerSnapshot.Histogram histogram = snapshot.histogram(
+                new double[]{59, 24, 61, 26}, Dimension.AGE_GROUP);
+
+        assertEquals(1, histogram.getCount(AgeGroup.Young.ordinal()));
+        assertEquals(1, histogram.getCount(AgeGroup.MiddleAged.ordinal()));
+        // customers without a location are never in an area
+        assertEquals(2, histogram.getTotal());
+    }
+
+    @Test
+    public void mergesChangedCustomersById() {
+        int year = LocalDate.now().getYear();
+        CustomerSnapshot.Columns changed = new CustomerSnapshot.Columns(2);
+        // a new customer before the others, and customer 3 moved away
+        changed.add(1, CustomerStatus.Contacted, Gender.Male,
+                LocalDate.of(year - 80, 6, 1), null, null);
+        changed.add(3, CustomerStatus.ImportedLead, Gender.Female,
+                LocalDate.of(year - 80, 6, 1), 10.0, 10.0);
+
+        // customer 4 was deleted
+        CustomerSnapshot next = snapshot.withChanges(new int[]{1, 3, 4},
+                changed);
+
+        assertEquals(4, next.size());
+        CustomerSnapshot.Histogram histogram = next.histogram(
+                Dimension.AGE_GROUP);
+        assertEquals(1, histogram.getCount(AgeGroup.Children.ordinal()));
+        assertEquals(1, histogram.getCount(AgeGroup.Young.ordinal()));
+        assertEquals(0, histogram.getCount(AgeGroup.MiddleAged.ordinal()));
+        assertEquals(2, histogram.getCount(AgeGroup.Old.ordinal()));
+        assertEquals(0, histogram.getCount(UNKNOWN_AGE));
+        assertEquals(1, next.histogram(new double[]{59, 24, 61, 26},
+                Dimension.AGE_GROUP).getTotal());
+        // the old snapshot is unchanged
+        assertEquals(4, snapshot.size());
+        assertEquals(1, snapshot.histogram(Dimension.AGE_GROUP)
+                .getCount(UNKNOWN_AGE));
+    }
+
+    private static CustomerSnapshot snapshot() {
+        int year = LocalDate.now().getYear();
+        CustomerSnapshot.Columns columns = new CustomerSnapshot.Columns(4);
+        columns.add(2, CustomerStatus.ImportedLead, Gender.Female,
+                LocalDate.of(year - 20, 6, 1), 60.0, 25.0);
+        columns.add(3, CustomerStatus.NotContacted, Gender.Male,
+                LocalDate.of(year - 45, 6, 1), 60.5, 25.0);
+        columns.add(4, null, null, null, null, null);
+        columns.add(5, CustomerStatus.ImportedLead, Gender.Male,
+                LocalDate.of(year - 5, 6, 1), 10.0, 10.0);
+        return new CustomerSnapshot(Runnable::run, columns);
+    }
+}
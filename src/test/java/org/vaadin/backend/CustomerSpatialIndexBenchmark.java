@@ -0,0 +1,175 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.vaadin.backend.domain.Customer;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the map queries of {@link CustomerSpatialIndex} with the same
+ * queries answered by a database scan, using an in-memory H2 database
+ * without indexes on the coordinates and customers from
+ * {@link CustomerGenerator}. Both query around central Helsinki.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomerSpatialIndexBenchmark {
+
+    private static final double LAT = 60.1699;
+    private static final double LON = 24.9384;
+    // about a zoomed-in map view
+    private static final double HALF_SIZE = 0.02;
+
+    @Param({"100000", "1000000"})
+    int customers;
+
+    private CustomerSpatialIndex index;
+
+    private Connection connection;
+    private PreparedStatement range;
+    private PreparedStatement nearest;
+
+    @Setup
+    public void setUp() throws SQLException {
+        int[] ids = new int[customers];
+        double[] lats = new double[customers];
+        double[] lons = new double[customers];
+        connection = DriverManager.getConnection("jdbc:h2:mem:spatial");
+        try (Statement s = connection.createStatement()) {
+            s.execute("CREATE TABLE customer (id INT PRIMARY KEY, "
+                    + "latitude DOUBLE, longitude DOUBLE)");
+        }
+        CustomerGenerator generator = new CustomerGenerator().withSeed(1)
+                .withCount(customers);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO customer VALUES (?, ?, ?)")) {
+            for (int i = 0; i < customers; i++) {
+                Customer c = generator.next();
+                ids[i] = i + 1;
+                lats[i] = c.getLatitude();
+                lons[i] = c.getLongitude();
+                insert.setInt(1, ids[i]);
+                insert.setDouble(2, lats[i]);
+                insert.setDouble(3, lons[i]);
+                insert.addBatch();
+                if (i % 10000 == 9999) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        index = new CustomerSpatialIndex(ids, lats, lons);
+        range = connection.prepareStatement("SELECT id, latitude, longitude "
+                + "FROM customer WHERE latitude BETWEEN ? AND ? "
+                + "AND longitude BETWEEN ? AND ? LIMIT 1000");
+        range.setDouble(1, LAT - HALF_SIZE);
+        range.setDouble(2, LAT + HALF_SIZE);
+        range.setDouble(3, LON - HALF_SIZE);
+        range.setDouble(4, LON + HALF_SIZE);
+        // the same equirectangular distance as the index
+        double cosLat = Math.cos(Math.toRadians(LAT));
+        nearest = connection.prepareStatement("SELECT id, latitude, "
+                + "longitude FROM customer ORDER BY "
+                + "(latitude - ?) * (latitude - ?) "
+                + "+ (longitude - ?) * (longitude - ?) * ? LIMIT 10");
+        nearest.setDouble(1, LAT);
+        nearest.setDouble(2, LAT);
+        nearest.setDouble(3, LON);
+        nearest.setDouble(4, LON);
+        nearest.setDouble(5, cosLat * cosLat);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public CustomerSpatialIndex.Locations rangeFromIndex() {
+        return index.range(LAT - HALF_SIZE, LON - HALF_SIZE, LAT + HALF_SIZE,
+                LON + HALF_SIZE, 1000);
+    }
+
+    @Benchmark
+    public int rangeFromDatabase() throws SQLException {
+        return count(range);
+    }
+
+    @Benchmark
+    public CustomerSpatialIndex.Locations nearestFromIndex() {
+        return index.nearest(LAT, LON, 10);
+    }
+
+    @Benchmark
+    public int nearestFromDatabase() throws SQLException {
+        return count(nearest);
+    }
+
+    private static int count(PreparedStatement query) throws SQLException {
+        int rows = 0;
+        try (ResultSet rs = query.executeQuery()) {
+            while (rs.next()) {
+                rows += rs.getInt(1) > 0 ? 1 : 0;
+                rs.getDouble(2);
+                rs.getDouble(3);
+            }
+        }
+        return rows;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CustomerSpatialIndexBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CustomerSpatialIndexTest {
+
+    private static final int CUSTOMERS = 5000;
+
+    private final int[] ids = new int[CUSTOMERS];
+    private final double[] lats = new double[CUSTOMERS];
+    private final double[] lons = new double[CUSTOMERS];
+    private final CustomerSpatialIndex index;
+
+    public CustomerSpatialIndexTest() {
+        // around Helsinki and Tampere, more than the cell size apart
+        Random random = new Random(42);
+        for (int i = 0; i < CUSTOMERS; i++) {
+            ids[i] = i + 1;
+            lats[i] = (i % 2 == 0 ? 60.1 : 61.4) + random.nextDouble() * 0.3;
+            lons[i] = (i % 2 == 0 ? 24.8 : 23.6) + random.nextDouble() * 0.4;
+        }
+        index = new CustomerSpatialIndex(ids, lats, lons);
+    }
+
+    @Test
+    public void rangeReturnsTheCustomersInTheArea() {
+        CustomerSpatialIndex.Locations result = index.range(60.2, 24.9, 60.3,
+                25.1, Integer.MAX_VALUE);
+
+        Set<Integer> found = new HashSet<>();
+        for (int i = 0; i < result.size(); i++) {
+            found.add(result.getId(i));
+        }
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < CUSTOMERS; i++) {
+            if (lats[i] >= 60.2 && lats[i] <= 60.3 && lons[i] >= 24.9
+                    && lons[i] <= 25.1) {
+                expected.add(ids[i]);
+            }
+        }
+        assertTrue(expected.size() > 10);
+        assertEquals(expected, found);
+    }
+
+    @Test
+    public void rangeStopsAtTheLimit() {
+        assertEquals(10, index.range(59, 23, 62, 26, 10).size());
+    }
+
+    @Test
+    public void nearestMatchesALinearScan() {
+        Random random = new Random(7);
+        for (int query = 0; query < 50; query++) {
+            double lat = 59.8 + random.nextDouble() * 2;
+            double lon = 23.3 + random.nextDouble() * 2;
+            for (int k : new int[]{1, 5, 20}) {
+                assertNearest(lat, lon, k);
+            }
+        }
+    }
+
+    @Test
+    public void nearestFarFromAllCustomers() {
+        assertNearest(0, 0, 3);
+        assertNearest(70, 40, 3);
+    }
+
+    @Test
+    public void nearestReturnsAllCustomersWhenKIsLarger() {
+        CustomerSpatialIndex small = new CustomerSpatialIndex(
+                new int[]{1, 2, 3}, new double[]{60.0, 60.5, 61.0},
+                new double[]{25.0, 25.0, 25.0});
+
+        CustomerSpatialIndex.Locations result = small.nearest(60.6, 25.0, 10);
+
+        assertEquals(3, result.size());
+        assertArrayEquals(new int[]{2, 3, 1}, new int[]{result.getId(0),
+            result.getId(1), result.getId(2)});
+    }
+
+    @Test
+    public void emptyIndexFindsNothing() {
+        CustomerSpatialIndex empty = new CustomerSpatialIndex(new int[0],
+                new double[0], new double[0]);
+
+        assertEquals(0, empty.nearest(60, 25, 5).size());
+        assertEquals(0, empty.range(-90, -180, 90, 180, 5).size());
+    }
+
+    private void assertNearest(double lat, double lon, int k) {
+        double cosLat = Math.cos(Math.toRadians(lat));
+        int[] expected = IntStream.range(0, CUSTOMERS).boxed()
+                .sorted(Comparator.comparingDouble(i -> distance(lat, lon,
+                        cosLat, lats[i], lons[i])))
+                .limit(k).mapToInt(i -> ids[i]).toArray();
+
+        CustomerSpatialIndex.Locations result = index.nearest(lat, lon, k);
+        int[] found = new int[result.size()];
+        for (int i = 0; i < found.length; i++) {
+            found[i] = result.getId(i);
+        }
+        assertEquals("nearest to " + lat + ", " + lon,
+                Arrays.toString(expected), Arrays.toString(found));
+    }
+
+    private static double distance(double lat, double lon, double cosLat,
+            double lat2, double lon2) {
+        double dx = (lon2 - lon) * cosLat;
+        double dy = lat2 - lat;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
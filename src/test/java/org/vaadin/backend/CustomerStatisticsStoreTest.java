@@ -0,0 +1,97 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import org.junit.Test;
+import org.vaadin.backend.domain.AgeGroup;
+import org.vaadin.backend.domain.CustomerStatistics;
+import org.vaadin.backend.domain.CustomerStatus;
+import org.vaadin.backend.domain.Gender;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class CustomerStatisticsStoreTest {
+
+    private static final int YEAR = LocalDate.now().getYear();
+
+    private final CustomerStatisticsStore store = new CustomerStatisticsStore(
+            Arrays.asList(
+                    row(1, CustomerStatus.Contacted, Gender.Female, 20),
+                    row(2, CustomerStatus.Contacted, Gender.Male, 45),
+                    row(3, null, null, null)));
+
+    private static Object[] row(int id, CustomerStatus status, Gender gender,
+            Integer age) {
+        return new Object[]{id, status, gender,
+            age == null ? null : LocalDate.of(YEAR - age, 6, 1)};
+    }
+
+    @Test
+    public void countsTheLoadedCustomers() {
+        CustomerStatistics statistics = store.getStatistics();
+
+        assertEquals(2, statistics.getCount(CustomerStatus.Contacted));
+        assertEquals(1, statistics.getCount(Gender.Female));
+        assertEquals(1, statistics.getUnknownGenderCount());
+        assertEquals(1, statistics.getCount(AgeGroup.Young, Gender.Female));
+        assertEquals(1, statistics.getCount(AgeGroup.MiddleAged,
+                Gender.Male));
+    }
+
+    @Test
+    public void movesAChangedCustomerBetweenCounters() {
+        store.apply(row(2, CustomerStatus.Customer, Gender.Male, 45));
+        // applying the same values again changes nothing
+        store.apply(row(2, CustomerStatus.Customer, Gender.Male, 45));
+        store.apply(row(3, null, Gender.Female, 5));
+
+        CustomerStatistics statistics = store.getStatistics();
+        assertEquals(1, statistics.getCount(CustomerStatus.Contacted));
+        assertEquals(1, statistics.getCount(CustomerStatus.Customer));
+        assertEquals(2, statistics.getCount(Gender.Female));
+        assertEquals(0, statistics.getUnknownGenderCount());
+        assertEquals(1, statistics.getCount(AgeGroup.Children,
+                Gender.Female));
+    }
+
+    @Test
+    public void removedCustomersAreNotCounted() {
+        store.apply(1, -1);
+        store.apply(4, -1);
+
+        CustomerStatistics statistics = store.getStatistics();
+        assertEquals(1, statistics.getCount(CustomerStatus.Contacted));
+        assertEquals(0, statistics.getCount(Gender.Female));
+        assertEquals(0, statistics.getCount(AgeGroup.Young, Gender.Female));
+        assertEquals(store.getStatistics(), new CustomerStatisticsStore(
+                Arrays.asList(row(2, CustomerStatus.Contacted, Gender.Male,
+                        45), row(3, null, null, null))).getStatistics());
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.vaadin.backend.domain.Customer;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of fetching a Grid page at offsets 0, 10k and 400k,
+ * with OFFSET paging and with the keyset paging of
+ * {@link CustomerService#fetch(String, CustomerKey, int, int, int, java.util.List)}.
+ * The queries mirror the SQL generated for the default order and for a
+ * sorted column, on an in-memory H2 database with the same (column, id)
+ * index as the Customer entity. Sorted by a column, the keyset paging reads
+ * the ids of the page from the index first and then the rows by id, like
+ * the service.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PagingBenchmark {
+
+    private static final int CUSTOMERS = 500000;
+
+    private static final int PAGE_SIZE = 50;
+
+    private static final String COLUMNS = "SELECT id, first_name, last_name, "
+            + "email, status FROM customer ";
+
+    private static final String IDS = "SELECT id FROM customer ";
+
+    @Param({"0", "10000", "400000"})
+    int offset;
+
+    /**
+     * The sorted column, id for the default order.
+     */
+    @Param({"id", "last_name"})
+    String sort;
+
+    private Connection connection;
+    private PreparedStatement offsetQuery;
+    /**
+     * The segments the keyset paging reads the ids of the page from in turn
+     * until the page is full, each an index range seek.
+     */
+    private PreparedStatement[] keysetQueries;
+    private int[] limitParameters;
+    // the rows of the page, by id
+    private PreparedStatement rowsQuery;
+
+    @Setup
+    public void setUp() throws SQLException {
+        // without reusing the result of a repeated query, which H2 does by
+        // default for unchanged tables
+        connection = DriverManager.getConnection(
+                "jdbc:h2:mem:paging;OPTIMIZE_REUSE_RESULTS=FALSE");
+        try (Statement s = connection.createStatement()) {
+            s.execute("CREATE TABLE customer (id INT PRIMARY KEY, "
+                    + "first_name VARCHAR(255), last_name VARCHAR(255), "
+                    + "email VARCHAR(255), status INT)");
+            s.execute("CREATE INDEX customer_lastname_idx "
+                    + "ON customer (last_name, id)");
+        }
+        CustomerGenerator generator = new CustomerGenerator().withSeed(1)
+                .withCount(CUSTOMERS);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO customer VALUES (?, ?, ?, ?, ?)")) {
+            for (int id = 1; id <= CUSTOMERS; id++) {
+                Customer c = generator.next();
+                insert.setInt(1, id);
+                insert.setString(2, c.getFirstName());
+                insert.setString(3, c.getLastName());
+                insert.setString(4, c.getEmail());
+                insert.setInt(5, c.getStatus().ordinal());
+                insert.addBatch();
+                if (id % 10000 == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        String orderBy = sort.equals("id") ? "ORDER BY id "
+                : "ORDER BY " + sort + ", id ";
+        // customers without a value are queried separately, after these
+        String values = sort.equals("id") ? ""
+                : "WHERE " + sort + " IS NOT NULL ";
+        offsetQuery = connection.prepareStatement(COLUMNS + values + orderBy
+                + "LIMIT " + PAGE_SIZE + " OFFSET " + offset);
+        StringBuilder ids = new StringBuilder("?");
+        for (int i = 1; i < PAGE_SIZE; i++) {
+            ids.append(", ?");
+        }
+        rowsQuery = connection.prepareStatement(COLUMNS + "WHERE id IN ("
+                + ids + ")");
+        // pages in id order are read from the primary key directly
+        String select = sort.equals("id") ? COLUMNS : IDS;
+        if (offset == 0) {
+            keysetQueries = new PreparedStatement[]{
+                connection.prepareStatement(select + values + orderBy
+                + "LIMIT ?")};
+            limitParameters = new int[]{1};
+            return;
+        }
+        // the key of the last row of the preceding page, as remembered by
+        // the Grid
+        int id;
+        String value;
+        try (ResultSet rs = connection.createStatement().executeQuery(
+                "SELECT id, " + sort + " FROM customer " + values + orderBy
+                + "LIMIT 1 OFFSET " + (offset - 1))) {
+            rs.next();
+            id = rs.getInt(1);
+            value = rs.getString(2);
+        }
+        if (sort.equals("id")) {
+            keysetQueries = new PreparedStatement[]{
+                connection.prepareStatement(COLUMNS + "WHERE id > ? "
+                + orderBy + "LIMIT ?")};
+            keysetQueries[0].setInt(1, id);
+            limitParameters = new int[]{2};
+        } else {
+            // the rest of the customers with the same value, then the
+            // following values
+            keysetQueries = new PreparedStatement[]{
+                connection.prepareStatement(IDS + "WHERE " + sort
+                + " = ? AND id > ? " + orderBy + "LIMIT ?"),
+                connection.prepareStatement(IDS + "WHERE " + sort
+                + " > ? " + orderBy + "LIMIT ?")};
+            keysetQueries[0].setString(1, value);
+            keysetQueries[0].setInt(2, id);
+            keysetQueries[1].setString(1, value);
+            limitParameters = new int[]{3, 2};
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public int offsetPaging() throws SQLException {
+        return fetch(offsetQuery);
+    }
+
+    @Benchmark
+    public int keysetPaging() throws SQLException {
+        if (sort.equals("id")) {
+            keysetQueries[0].setInt(limitParameters[0], PAGE_SIZE);
+            return fetch(keysetQueries[0]);
+        }
+        int rows = 0;
+        for (int i = 0; i < keysetQueries.length && rows < PAGE_SIZE; i++) {
+            keysetQueries[i].setInt(limitParameters[i], PAGE_SIZE - rows);
+            try (ResultSet rs = keysetQueries[i].executeQuery()) {
+                while (rs.next()) {
+                    rowsQuery.setInt(++rows, rs.getInt(1));
+                }
+            }
+        }
+        // no customer has the id 0
+        for (int i = rows; i < PAGE_SIZE; i++) {
+            rowsQuery.setInt(i + 1, 0);
+        }
+        return fetch(rowsQuery);
+    }
+
+    private static int fetch(PreparedStatement query) throws SQLException {
+        int rows = 0;
+        try (ResultSet rs = query.executeQuery()) {
+            while (rs.next()) {
+                rows += rs.getInt(1) > 0 ? 1 : 0;
+                rs.getString(2);
+                rs.getString(3);
+                rs.getString(4);
+                rs.getInt(5);
+            }
+        }
+        return rows;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PagingBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
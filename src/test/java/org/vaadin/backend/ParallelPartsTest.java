@@ -0,0 +1,95 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.backend;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+
+public class ParallelPartsTest {
+
+    @Test
+    public void partsCoverTheRangeInOrder() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            assertRange(ParallelParts.compute(executor, 1000, 10,
+                    ParallelPartsTest::range), 1000);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void callerRunsRejectedParts() {
+        assertRange(ParallelParts.compute(command -> {
+            throw new RejectedExecutionException();
+        }, 1000, 10, ParallelPartsTest::range), 1000);
+    }
+
+    @Test
+    public void callerRunsPartsNotStartedByTheExecutor() {
+        // an executor that never gets to its queue, like a saturated pool
+        List<Runnable> queued = new ArrayList<>();
+        assertRange(ParallelParts.compute(queued::add, 1000, 10,
+                ParallelPartsTest::range), 1000);
+    }
+
+    @Test
+    public void smallRangesAreOnePart() {
+        assertEquals(1, ParallelParts.compute(Runnable::run, 15, 10,
+                ParallelPartsTest::range).size());
+        assertRange(ParallelParts.compute(Runnable::run, 0, 10,
+                ParallelPartsTest::range), 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failuresArePropagated() {
+        ParallelParts.compute(Runnable::run, 1000, 10, (from, to) -> {
+            throw new IllegalStateException();
+        });
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            indexes.add(i);
+        }
+        return indexes;
+    }
+
+    private static void assertRange(List<List<Integer>> parts, int size) {
+        List<Integer> all = new ArrayList<>();
+        parts.forEach(all::addAll);
+        assertEquals(range(0, size), all);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * This is free and unencumbered software released into the public domain.
+ * 
+ * Anyone is free to copy, modify, publish, use, compile, sell, or
+ * distribute this software, either in source code form or as a compiled
+ * binary, for any purpose, commercial or non-commercial, and by any
+ * means.
+ * 
+ * In jurisdictions that recognize copyright laws, the author or authors
+ * of this software dedicate any and all copyright interest in the
+ * software to the public domain. We make this dedication for the benefit
+ * of the public at large and to the detriment of our heirs and
+ * successors. We intend this dedication to be an overt act of
+ * relinquishment in perpetuity of all present and future rights to this
+ * software under copyright law.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS BE LIABLE FOR ANY CLAIM, DAMAGES OR
+ * OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE,
+ * ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ * 
+ * For more information, please refer to <http://unlicense.org/>
+ */
+package org.vaadin.presentation;
+
+import org.junit.Test;
+import org.vaadin.backend.CustomerChange;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ChangeQueueTest {
+
+    private final ChangeQueue queue = new ChangeQueue(3);
+
+    @Test
+    public void latestSaveOfACustomerIsKept() {
+        queue.add(CustomerChange.saved(1));
+        queue.add(CustomerChange.saved(2));
+        queue.add(CustomerChange.saved(1));
+
+        assertChanges("[SAVE 1, SAVE 2]");
+    }
+
+    @Test
+    public void saveDoesNotReplaceCreate() {
+        queue.add(CustomerChange.created(1));
+        queue.add(CustomerChange.saved(1));
+
+        assertChanges("[CREATE 1]");
+    }
+
+    @Test
+    public void saveDoesNotReplaceDelete() {
+        queue.add(CustomerChange.deleted(1));
+        queue.add(CustomerChange.saved(1));
+
+        assertChanges("[DELETE 1]");
+    }
+
+    @Test
+    public void deleteReplacesCreateAndSave() {
+        queue.add(CustomerChange.created(1));
+        queue.add(CustomerChange.saved(2));
+        queue.add(CustomerChange.deleted(1));
+        queue.add(CustomerChange.deleted(2));
+
+        assertChanges("[DELETE 1, DELETE 2]");
+    }
+
+    @Test
+    public void allReplacesEverything() {
+        queue.add(CustomerChange.saved(1));
+        queue.add(CustomerChange.all());
+        queue.add(CustomerChange.created(2));
+
+        assertChanges("[ALL 0]");
+    }
+
+    @Test
+    public void changesOfKnownCustomersDoNotOverflow() {
+        queue.add(CustomerChange.saved(1));
+        queue.add(CustomerChange.saved(2));
+        queue.add(CustomerChange.saved(3));
+        queue.add(CustomerChange.deleted(3));
+
+        assertChanges("[SAVE 1, SAVE 2, DELETE 3]");
+    }
+
+    @Test
+    public void overflowCollapsesToAll() {
+        queue.add(CustomerChange.saved(1));
+        queue.add(CustomerChange.saved(2));
+        queue.add(CustomerChange.saved(3));
+        queue.add(CustomerChange.saved(4));
+
+        assertChanges("[ALL 0]");
+    }
+
+    private void assertChanges(String expected) {
+        List<CustomerChange> changes = queue.getChanges();
+        assertEquals(expected, changes.toString());
+    }
+}